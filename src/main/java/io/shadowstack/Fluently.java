@@ -4,6 +4,8 @@ import io.shadowstack.candidates.CandidateService;
 import io.shadowstack.candidates.InvocationReplayer;
 import io.shadowstack.candidates.registrars.CandidateRegistrar;
 import io.shadowstack.candidates.registrars.RestCandidateRegistrar;
+import io.shadowstack.invocations.destinations.AsyncInvocationDestination;
+import io.shadowstack.invocations.destinations.AsyncRestInvocationDestination;
 import io.shadowstack.invocations.destinations.InvocationDestination;
 import io.shadowstack.invocations.destinations.ReplayingRestInvocationDestination;
 import io.shadowstack.invocations.destinations.ShadowingRestInvocationDestination;
@@ -16,12 +18,17 @@ import io.shadowstack.filters.Noise;
 import io.shadowstack.filters.ObjectFilter;
 import io.shadowstack.filters.Secret;
 import io.shadowstack.incumbents.InvocationRecorder;
+import io.shadowstack.throttles.ContextPercentage;
+import io.shadowstack.throttles.Novelty;
+import io.shadowstack.throttles.OverheadBudget;
 import io.shadowstack.throttles.Percentage;
 import io.shadowstack.throttles.Rate;
+import io.shadowstack.throttles.SlidingWindow;
 import io.shadowstack.throttles.Throttle;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -34,14 +41,30 @@ public class Fluently {
         return new Percentage(percent);
     }
 
+    public static Throttle percentOfContexts(double percent) {
+        return new ContextPercentage(percent);
+    }
+
     public static Rate rate(int max) {
         return new Rate(max);
     }
 
+    public static SlidingWindow window(int max) {
+        return new SlidingWindow(max);
+    }
+
     public static Throttle every(long timeDuration, TimeUnit timeUnit) {
         return new Rate(1).per(timeDuration, timeUnit);
     }
 
+    public static Novelty novel(int maxPerKey) {
+        return new Novelty(maxPerKey);
+    }
+
+    public static OverheadBudget overhead(double percent) {
+        return new OverheadBudget(percent);
+    }
+
     public static Predicate<Field> named(String... names) {
         return new NamesPredicate(names);
     }
@@ -66,6 +89,20 @@ public class Fluently {
         };
     }
 
+    public static Predicate<Method> methodsNamed(String... names) {
+        Set<String> nameSet = new HashSet<>(Arrays.asList(names));
+        return method -> method != null && nameSet.contains(method.getName());
+    }
+
+    /**
+     * @return A predicate matching bean getters: methods named getX or isX that take nothing and return something.
+     */
+    public static Predicate<Method> getters() {
+        return method -> method != null && method.getParameterCount() == 0 && method.getReturnType() != void.class &&
+                ((method.getName().startsWith("get") && method.getName().length() > 3) ||
+                 (method.getName().startsWith("is") && method.getName().length() > 2));
+    }
+
     public static ObjectFilter filter(FieldFilter.Builder... fieldFilterBuilders) {
         return new ObjectFilter(Arrays.stream(fieldFilterBuilders).map(FieldFilter.Builder::build).toArray(FieldFilter[]::new));
     }
@@ -111,6 +148,14 @@ public class Fluently {
         public InvocationDestination shadowing() {
             return ShadowingRestInvocationDestination.createClient(this.host);
         }
+
+        public AsyncInvocationDestination replayingAsync() {
+            return AsyncRestInvocationDestination.replaying(this.host);
+        }
+
+        public AsyncInvocationDestination shadowingAsync() {
+            return AsyncRestInvocationDestination.shadowing(this.host);
+        }
     }
 
     public static DestinationClientBuilder destination(String host) {
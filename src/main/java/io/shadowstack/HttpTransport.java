@@ -0,0 +1,143 @@
+package io.shadowstack;
+
+import feign.Request;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.Value;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HTTP connections and threads shared by every REST client talking to an oracle. Clients made from the same
+ * transport share one connection pool, so that connections to the oracle are kept alive and reused between calls
+ * from any of them rather than each client opening its own, and one dispatcher, so that asynchronous calls are
+ * bounded together. Each client may still have timeouts of its own. HTTP/2 is negotiated with oracles served over
+ * TLS that support it, which lets calls share a single connection; oracles served in plain text are only spoken to
+ * over HTTP/2 when they're known to support it. Request bodies may be compressed with gzip for oracles which accept
+ * them that way; responses are decompressed whenever the oracle compresses them.
+ */
+@Value
+@Builder(toBuilder = true)
+public class HttpTransport {
+    private static volatile HttpTransport shared = HttpTransport.builder().build();
+    @Builder.Default int maxIdleConnections = 16;
+    @Builder.Default Duration keepAlive = Duration.ofMinutes(5L);
+    @Builder.Default int maxRequests = 256;
+    @Builder.Default int maxRequestsPerHost = 64;
+    @Builder.Default boolean http2 = true;
+    @Builder.Default boolean http2PriorKnowledge = false;
+    @Builder.Default boolean gzipRequests = false;
+    @Builder.Default long gzipMinimumBytes = 1024L;
+    @Builder.Default Timeouts timeouts = Timeouts.DEFAULT;
+    @Getter(lazy = true) @ToString.Exclude @EqualsAndHashCode.Exclude
+    OkHttpClient client = this.newClient();
+
+    /**
+     * @return The transport the REST clients are made with unless given another.
+     */
+    public static HttpTransport shared() {
+        return shared;
+    }
+
+    /**
+     * Make REST clients created from now on with the given transport. Clients made before carry on with theirs.
+     */
+    public static void share(HttpTransport transport) {
+        shared = transport;
+    }
+
+    /**
+     * @return An OkHttp client sharing this transport's connections and threads, with the given timeouts.
+     */
+    public OkHttpClient client(Timeouts timeouts) {
+        return this.getClient().newBuilder()
+                .connectTimeout(timeouts.getConnect().toMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(timeouts.getRead().toMillis(), TimeUnit.MILLISECONDS)
+                .writeTimeout(timeouts.getWrite().toMillis(), TimeUnit.MILLISECONDS)
+                .callTimeout(timeouts.getCall().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * @return A Feign client sharing this transport's connections and threads, with the given timeouts.
+     */
+    public feign.Client feignClient(Timeouts timeouts) {
+        return new feign.okhttp.OkHttpClient(this.client(timeouts));
+    }
+
+    /**
+     * @return Feign options with the given timeouts. Feign applies its own options to every call, so a Feign client
+     * only keeps the timeouts it was made with if it's given the same ones here.
+     */
+    public static Request.Options feignOptions(Timeouts timeouts) {
+        return new Request.Options(timeouts.getConnect().toMillis(), TimeUnit.MILLISECONDS,
+                timeouts.getRead().toMillis(), TimeUnit.MILLISECONDS, true);
+    }
+
+    private OkHttpClient newClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(this.maxRequests);
+        dispatcher.setMaxRequestsPerHost(this.maxRequestsPerHost);
+        ConnectionPool pool = new ConnectionPool(this.maxIdleConnections, this.keepAlive.toMillis(), TimeUnit.MILLISECONDS);
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(pool)
+                .protocols(this.http2PriorKnowledge? Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE) :
+                           this.http2? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1) :
+                           Collections.singletonList(Protocol.HTTP_1_1));
+        if(this.gzipRequests) {
+            builder.addInterceptor(this::gzip);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Compress the request's body, unless it's too small to be worth it or already encoded.
+     */
+    private Response gzip(Interceptor.Chain chain) throws IOException {
+        okhttp3.Request request = chain.request();
+        RequestBody body = request.body();
+        if(body == null || request.header("Content-Encoding") != null ||
+                (body.contentLength() >= 0L && body.contentLength() < this.gzipMinimumBytes)) {
+            return chain.proceed(request);
+        }
+        Buffer compressed = new Buffer();
+        try(BufferedSink sink = Okio.buffer(new GzipSink(compressed))) {
+            body.writeTo(sink);
+        }
+        return chain.proceed(request.newBuilder()
+                .header("Content-Encoding", "gzip")
+                .method(request.method(), RequestBody.create(body.contentType(), compressed.readByteArray()))
+                .build());
+    }
+
+    /**
+     * How long a client waits to connect, for each read and write, and for a whole call. Zero means no limit.
+     */
+    @Value
+    @Builder(toBuilder = true)
+    public static class Timeouts {
+        public static final Timeouts DEFAULT = Timeouts.builder().build();
+        @Builder.Default Duration connect = Duration.ofSeconds(10L);
+        @Builder.Default Duration read = Duration.ofSeconds(30L);
+        @Builder.Default Duration write = Duration.ofSeconds(30L);
+        @Builder.Default Duration call = Duration.ZERO;
+    }
+}
@@ -0,0 +1,29 @@
+package io.shadowstack;
+
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Factory;
+import net.sf.cglib.proxy.MethodInterceptor;
+
+/**
+ * Creates intercepting proxies, generating the proxy class only once per target type. The first
+ * proxy of a type is kept as a prototype and later proxies are stamped out from it with their own
+ * callback, which costs about as much as allocating the object.
+ */
+public class ProxyFactory {
+    private static final MethodInterceptor PASS_THROUGH = (obj, method, args, proxy) -> proxy.invokeSuper(obj, args);
+    private static final ClassValue<Factory> PROTOTYPES = new ClassValue<Factory>() {
+        @Override
+        protected Factory computeValue(Class<?> cls) {
+            // The prototype's class is generated for the MethodInterceptor callback type,
+            // so every instance created from it can be given its own interceptor.
+            return (Factory) Enhancer.create(cls, PASS_THROUGH);
+        }
+    };
+
+    private ProxyFactory() {}
+
+    @SuppressWarnings("unchecked")
+    public static <T> T create(Class<T> cls, MethodInterceptor interceptor) {
+        return (T) PROTOTYPES.get(cls).newInstance(interceptor);
+    }
+}
@@ -1,29 +1,32 @@
 package io.shadowstack;
 
-import lombok.extern.slf4j.Slf4j;
-
 import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-@Slf4j
 public class ReflectiveAccess {
+    // Kept with each declaring class, so that caching its fields' accessors doesn't keep the class loaded
+    private static final ClassValue<Map<Field, FieldAccessor>> ACCESSORS = new ClassValue<Map<Field, FieldAccessor>>() {
+        @Override
+        protected Map<Field, FieldAccessor> computeValue(Class<?> cls) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
     private ReflectiveAccess() {}
 
+    /**
+     * @return The cached accessor for the given field, built on first use.
+     */
+    public static FieldAccessor accessor(Field field) {
+        return ACCESSORS.get(field.getDeclaringClass()).computeIfAbsent(field, FieldAccessor::new);
+    }
+
     public static void setMember(Object parent, Object member, Field field) {
-        try {
-            field.set(parent, member);
-        } catch (IllegalAccessException e) {
-            String message = "While setting filters %s of %s";
-            log.error(String.format(message, field.getName(), parent.getClass().getSimpleName()), e);
-        }
+        accessor(field).set(parent, member);
     }
 
     public static Object getMember(Object parent, Field field) {
-        try {
-            return field.get(parent);
-        } catch (IllegalAccessException e) {
-            String message = "While getting filters %s of %s";
-            log.error(String.format(message, field.getName(), parent.getClass().getSimpleName()), e);
-        }
-        return null;
+        return accessor(field).get(parent);
     }
 }
@@ -1,12 +1,14 @@
 package io.shadowstack.candidates;
 
+import io.shadowstack.ProxyFactory;
 import io.shadowstack.invocations.Invocation;
 import io.shadowstack.invocations.InvocationContext;
 import io.shadowstack.invocations.InvocationKey;
+import io.shadowstack.invocations.KeyFragmentCache;
+import io.shadowstack.invocations.KeyHasher;
 import io.shadowstack.invocations.sources.InvocationParameters;
 import io.shadowstack.invocations.sources.InvocationSource;
 import lombok.extern.slf4j.Slf4j;
-import net.sf.cglib.proxy.Enhancer;
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.MethodProxy;
 import io.shadowstack.exceptions.InvocationReplayerException;
@@ -22,6 +24,8 @@ public class InvocationReplayer<T> implements MethodInterceptor {
     private String contextId = null;
     private InvocationSource invocationSource = null;
     private ObjectFilter objectFilter;
+    private KeyHasher keyHasher = KeyHasher.SHA_256;
+    private KeyFragmentCache keyFragmentCache = null;
 
     public InvocationReplayer(Class<T> cls) {
         this.cls = cls;
@@ -32,6 +36,22 @@ public class InvocationReplayer<T> implements MethodInterceptor {
         return this;
     }
 
+    /**
+     * Hash invocation keys with the given hasher, which must be the one the invocations were recorded with.
+     */
+    public InvocationReplayer<T> hashingWith(KeyHasher keyHasher) {
+        this.keyHasher = keyHasher;
+        return this;
+    }
+
+    /**
+     * Reuse the serialized form of immutable arguments seen before when hashing invocation keys.
+     */
+    public InvocationReplayer<T> memoizingKeysWith(KeyFragmentCache keyFragmentCache) {
+        this.keyFragmentCache = keyFragmentCache;
+        return this;
+    }
+
     public InvocationReplayer<T> retrievingFrom(InvocationSource invocationSource) {
         this.invocationSource = invocationSource;
         return this;
@@ -42,7 +62,6 @@ public class InvocationReplayer<T> implements MethodInterceptor {
         return this;
     }
 
-    @SuppressWarnings("unchecked")
     public T buildProxy() throws InvocationReplayerException {
         if(this.cls == null) {
             throw new InvocationReplayerException("InvocationReplayer created with null class.");
@@ -56,7 +75,7 @@ public class InvocationReplayer<T> implements MethodInterceptor {
         if(this.contextId == null) {
             throw new InvocationReplayerException("InvocationReplayer started with null context ID.");
         }
-        return (T) Enhancer.create(this.cls, this);
+        return ProxyFactory.create(this.cls, this);
     }
 
     @Override
@@ -66,7 +85,8 @@ public class InvocationReplayer<T> implements MethodInterceptor {
         try(InvocationContext context = new InvocationContext(this.contextId))
         {
             Instant replayStart = Instant.now();
-            InvocationKey key = new InvocationKey(method, this.objectFilter.filterAsEvaluatedCopy(args));
+            InvocationKey key = new InvocationKey(method, this.objectFilter.filterAsEvaluatedCopy(args), this.keyHasher,
+                                                this.keyFragmentCache);
             InvocationParameters parameters = new InvocationParameters(key, context);
             Invocation invocation = this.invocationSource.retrieve(parameters);
             /*
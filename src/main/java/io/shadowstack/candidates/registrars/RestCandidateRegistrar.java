@@ -6,8 +6,8 @@ import feign.Logger;
 import feign.RequestLine;
 import feign.jackson.JacksonDecoder;
 import feign.jackson.JacksonEncoder;
-import feign.okhttp.OkHttpClient;
 import feign.slf4j.Slf4jLogger;
+import io.shadowstack.HttpTransport;
 
 /**
  * Registrar which is a REST API client for calling the registration endpoint on an oracle service.
@@ -20,12 +20,21 @@ public interface RestCandidateRegistrar extends CandidateRegistrar {
     /**
      * Create a new client for the given oracle host, conforming to the CandidateRegistrar interface, which
      * will forward candidate registration requests to the oracle's "register" endpoint.
+     * The client shares its connections with the other REST clients, through the shared {@link HttpTransport}.
      * @param host The host name of the oracle, including the protocol and port, e.g. "http://localhost:8080".
      * @return An instance of CandidateRegistrar that forwards to the oracle's "register" endpoint.
      */
     static CandidateRegistrar createClient(String host) {
+        return createClient(host, HttpTransport.shared().getTimeouts());
+    }
+
+    /**
+     * Create a new client as above, with the given timeouts.
+     */
+    static CandidateRegistrar createClient(String host, HttpTransport.Timeouts timeouts) {
         return Feign.builder()
-                .client(new OkHttpClient())
+                .client(HttpTransport.shared().feignClient(timeouts))
+                .options(HttpTransport.feignOptions(timeouts))
                 .encoder(new JacksonEncoder())
                 .decoder(new JacksonDecoder())
                 .logger(new Slf4jLogger(RestCandidateRegistrar.class))
@@ -29,6 +29,21 @@ public class FieldFilter {
         return obj;
     }
 
+    /**
+     * @return True if this filter should be applied to the given field of objects of the given class.
+     */
+    public boolean appliesTo(Class<?> cls, Field fld) {
+        return cls.equals(this.target) && this.selector.test(fld);
+    }
+
+    public Object generateEvaluated(Object member) {
+        return this.generateEvaluatedMember.apply(member);
+    }
+
+    public Object generateReference(Object member) {
+        return this.generateReferenceMember.apply(member);
+    }
+
     private void filterWith(Object obj, Field fld, Function<Object, Object> action) {
         if(obj == null) return;
         Class<?> cls = obj.getClass();
@@ -0,0 +1,21 @@
+package io.shadowstack.filters;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The reference and evaluated copies of an object, as produced together by an ObjectFilter.
+ * The two may share any part of the object graph that filtering left the same in both.
+ * Truncated copies are missing values that were over the filter's budget.
+ */
+@Data
+@AllArgsConstructor
+public class FilteredCopies<T> {
+    private final T reference;
+    private final T evaluated;
+    private final boolean truncated;
+
+    public FilteredCopies(T reference, T evaluated) {
+        this(reference, evaluated, false);
+    }
+}
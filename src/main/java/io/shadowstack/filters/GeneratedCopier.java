@@ -0,0 +1,24 @@
+package io.shadowstack.filters;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Plain Java field access and copying for one class, generated at compile time by
+ * {@link GeneratedCopierProcessor} for classes with {@link Secret} or {@link Noise} fields. An
+ * {@link ObjectFilter} uses these in place of reflection whenever one exists for the exact class it is copying.
+ */
+public interface GeneratedCopier<T> {
+    /**
+     * @return The names of the instance fields this copier reaches, in the order of their indices.
+     */
+    String[] fieldNames();
+
+    /**
+     * Copy every field of the source into the given copy, passing each reference through the given operator.
+     */
+    void copyInto(T source, T copy, UnaryOperator<Object> members);
+
+    Object get(T obj, int index);
+
+    void set(T obj, int index, Object value);
+}
@@ -0,0 +1,176 @@
+package io.shadowstack.filters;
+
+import lombok.AllArgsConstructor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Generates a {@link GeneratedCopier} for every class declaring a {@link Secret} or {@link Noise} field, reading
+ * and writing its fields directly just as reflection would. Classes that can't be copied that way (generic, inner,
+ * non-public or extending another class, or with a private or final field) are skipped and left to reflection:
+ * going through getters and setters instead could run code of the class's own, which would copy it differently.
+ */
+@SupportedAnnotationTypes({"io.shadowstack.filters.Secret", "io.shadowstack.filters.Noise"})
+public class GeneratedCopierProcessor extends AbstractProcessor {
+    private static final Set<String> PASSED_BY_VALUE = new HashSet<>(Arrays.asList(
+            "java.lang.String", "java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Short",
+            "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double"
+    ));
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> classes = new LinkedHashSet<>();
+        for(TypeElement annotation : annotations) {
+            for(VariableElement field : ElementFilter.fieldsIn(roundEnv.getElementsAnnotatedWith(annotation))) {
+                classes.add((TypeElement) field.getEnclosingElement());
+            }
+        }
+        for(TypeElement cls : classes) {
+            String name = this.processingEnv.getElementUtils().getBinaryName(cls).toString();
+            if(this.generated.add(name)) {
+                this.generate(cls, GeneratedCopiers.copierName(name));
+            }
+        }
+        return false; // Leave the annotations to anyone else interested in them.
+    }
+
+    private void generate(TypeElement cls, String copierName) {
+        String reason = unsupported(cls);
+        List<Member> members = new ArrayList<>();
+        for(VariableElement field : ElementFilter.fieldsIn(cls.getEnclosedElements())) {
+            if(reason != null) break;
+            if(field.getModifiers().contains(Modifier.STATIC)) continue;
+            Set<Modifier> modifiers = field.getModifiers();
+            if(modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+                reason = String.format("field %s can't be read and written from its package", field.getSimpleName());
+            }
+            members.add(new Member(field.getSimpleName().toString(), field.asType()));
+        }
+        if(reason != null) {
+            String message = "Not generating a copier for %s (%s). It will be copied reflectively.";
+            this.processingEnv.getMessager()
+                    .printMessage(Diagnostic.Kind.NOTE, String.format(message, cls, reason), cls);
+            return;
+        }
+        try {
+            JavaFileObject file = this.processingEnv.getFiler().createSourceFile(copierName, cls);
+            try(PrintWriter out = new PrintWriter(file.openWriter())) {
+                write(out, cls, copierName, members);
+            }
+        } catch(IOException e) {
+            String message = String.format("Couldn't generate a copier for %s: %s", cls, e.getMessage());
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, cls);
+        }
+    }
+
+    private static String unsupported(TypeElement cls) {
+        if(cls.getKind() != ElementKind.CLASS) return "not a class";
+        if(!cls.getTypeParameters().isEmpty()) return "generic";
+        TypeElement superclass = (TypeElement) ((DeclaredType) cls.getSuperclass()).asElement();
+        if(!superclass.getQualifiedName().contentEquals("java.lang.Object")) return "extends another class";
+        for(Element current = cls; current instanceof TypeElement; current = current.getEnclosingElement()) {
+            if(!current.getModifiers().contains(Modifier.PUBLIC)) return "not public";
+            if(current.getEnclosingElement() instanceof TypeElement && !current.getModifiers().contains(Modifier.STATIC)) {
+                return "an inner class";
+            }
+        }
+        return null;
+    }
+
+    private void write(PrintWriter out, TypeElement cls, String copierName, List<Member> members) {
+        int packageEnd = copierName.lastIndexOf('.');
+        String type = cls.getQualifiedName().toString();
+        if(packageEnd > 0) {
+            out.printf("package %s;%n%n", copierName.substring(0, packageEnd));
+        }
+        out.printf("/** Generated by %s from %s. Do not edit. */%n", GeneratedCopierProcessor.class.getName(), type);
+        out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+        out.printf("public final class %s implements %s<%s> {%n",
+                copierName.substring(packageEnd + 1), GeneratedCopier.class.getName(), type);
+        out.print("    private static final String[] FIELD_NAMES = {");
+        for(int i = 0; i < members.size(); ++i) {
+            out.printf("%s\"%s\"", i == 0? "" : ", ", members.get(i).name);
+        }
+        out.printf("};%n%n");
+
+        out.printf("    @Override%n    public String[] fieldNames() {%n        return FIELD_NAMES.clone();%n    }%n%n");
+
+        out.printf("    @Override%n    public void copyInto(%s source, %s copy, " +
+                "java.util.function.UnaryOperator<Object> members) {%n", type, type);
+        for(Member member : members) {
+            String value = member.read("source");
+            if(!this.isPassedByValue(member.type)) {
+                value = String.format("(%s) members.apply(%s)", this.castType(member.type), value);
+            }
+            out.printf("        %s;%n", member.write("copy", value));
+        }
+        out.printf("    }%n%n");
+
+        out.printf("    @Override%n    public Object get(%s obj, int index) {%n        switch(index) {%n", type);
+        for(int i = 0; i < members.size(); ++i) {
+            out.printf("            case %d: return %s;%n", i, members.get(i).read("obj"));
+        }
+        out.printf("            default: throw new IndexOutOfBoundsException(String.valueOf(index));%n");
+        out.printf("        }%n    }%n%n");
+
+        out.printf("    @Override%n    public void set(%s obj, int index, Object value) {%n        switch(index) {%n", type);
+        for(int i = 0; i < members.size(); ++i) {
+            Member member = members.get(i);
+            String value = String.format("(%s) value", this.castType(member.type));
+            out.printf("            case %d: %s; break;%n", i, member.write("obj", value));
+        }
+        out.printf("            default: throw new IndexOutOfBoundsException(String.valueOf(index));%n");
+        out.printf("        }%n    }%n}%n");
+    }
+
+    private boolean isPassedByValue(TypeMirror type) {
+        return type.getKind().isPrimitive() || PASSED_BY_VALUE.contains(type.toString());
+    }
+
+    /**
+     * Primitives are cast to their boxes and unboxed on assignment.
+     */
+    private String castType(TypeMirror type) {
+        if(type.getKind().isPrimitive()) {
+            return this.processingEnv.getTypeUtils().boxedClass((PrimitiveType) type)
+                    .getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    /**
+     * One field of a copied class, reached directly.
+     */
+    @AllArgsConstructor
+    private static class Member {
+        private final String name;
+        private final TypeMirror type;
+
+        private String read(String obj) {
+            return obj + "." + this.name;
+        }
+
+        private String write(String obj, String value) {
+            return obj + "." + this.name + " = " + value;
+        }
+    }
+}
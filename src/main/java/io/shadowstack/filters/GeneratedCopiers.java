@@ -0,0 +1,53 @@
+package io.shadowstack.filters;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Optional;
+
+/**
+ * Finds the copier generated for a class, if there is one, by its naming convention. Lookups are cached per class.
+ */
+@Slf4j
+final class GeneratedCopiers {
+    private static final String SUFFIX = "_ShadowCopier";
+    private static final ClassValue<Optional<GeneratedCopier<Object>>> COPIERS =
+            new ClassValue<Optional<GeneratedCopier<Object>>>() {
+        @Override
+        protected Optional<GeneratedCopier<Object>> computeValue(Class<?> cls) {
+            return Optional.ofNullable(load(cls));
+        }
+    };
+
+    private GeneratedCopiers() {}
+
+    /**
+     * @return The copier generated for exactly the given class, or null if there isn't one.
+     */
+    static GeneratedCopier<Object> of(Class<?> cls) {
+        return COPIERS.get(cls).orElse(null);
+    }
+
+    /**
+     * @return The binary name of the copier generated for the class with the given binary name. Copiers are
+     * top-level classes in the same package, so nested classes have their enclosing classes' names flattened in.
+     */
+    static String copierName(String binaryName) {
+        int packageEnd = binaryName.lastIndexOf('.') + 1;
+        return binaryName.substring(0, packageEnd) + binaryName.substring(packageEnd).replace('$', '_') + SUFFIX;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static GeneratedCopier<Object> load(Class<?> cls) {
+        if(cls.isArray() || cls.isPrimitive() || cls.getClassLoader() == null) return null;
+        try {
+            Class<?> copier = Class.forName(copierName(cls.getName()), true, cls.getClassLoader());
+            return (GeneratedCopier<Object>) copier.getDeclaredConstructor().newInstance();
+        } catch(ClassNotFoundException e) {
+            return null;
+        } catch(ReflectiveOperationException | ClassCastException e) {
+            String message = "While loading the generated copier for %s. It will be copied reflectively.";
+            log.error(String.format(message, cls), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.shadowstack.filters;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import lombok.AllArgsConstructor;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Limits on how much of an object graph may be captured. Graphs aren't walked to check them: a {@link Tally} is
+ * kept while the graph is deep cloned or serialized, counting each object as it's reached, and the capture is
+ * abandoned as soon as any limit is exceeded. Collections and arrays are checked by size before any of their
+ * elements are reached.
+ */
+@AllArgsConstructor
+class GraphBudget {
+    private static final ClassValue<Long> SHALLOW_BYTES = new ClassValue<Long>() {
+        @Override
+        protected Long computeValue(Class<?> cls) {
+            return shallowBytes(cls);
+        }
+    };
+    private final int maxObjects;
+    private final int maxCollectionSize;
+    private final long maxEstimatedBytes;
+
+    /**
+     * @return A fresh tally against this budget, for one graph.
+     */
+    Tally tally() {
+        return new Tally(this);
+    }
+
+    private static int sizeOf(Class<?> type) {
+        if(type == long.class || type == double.class) return 8;
+        if(type == int.class || type == float.class) return 4;
+        if(type == short.class || type == char.class) return 2;
+        if(type == byte.class || type == boolean.class) return 1;
+        return 4; // compressed reference
+    }
+
+    private static long shallowBytes(Class<?> cls) {
+        long bytes = 12L;
+        for(Class<?> current = cls; current != null && current != Object.class; current = current.getSuperclass()) {
+            for(Field field : current.getDeclaredFields()) {
+                if(!Modifier.isStatic(field.getModifiers())) {
+                    bytes += sizeOf(field.getType());
+                }
+            }
+        }
+        return (bytes + 7L) & ~7L;
+    }
+
+    /**
+     * Thrown from within a deep clone or serialization to abandon it once the graph is over budget. It's only ever
+     * caught by the filter that started it, so the one instance carries no stack trace.
+     */
+    static class Exceeded extends RuntimeException {
+        static final Exceeded INSTANCE = new Exceeded();
+
+        private Exceeded() {
+            super("Over the object filter's budget", null, false, false);
+        }
+    }
+
+    /**
+     * What a graph has used of the budget so far. It doubles as the cloner's map from the objects cloned so far
+     * to their clones, which the cloner hands to every step of the clone, so that each object is counted once.
+     */
+    static class Tally extends IdentityHashMap<Object, Object> {
+        private final GraphBudget budget;
+        private int objects = 0;
+        private long estimatedBytes = 0L;
+
+        private Tally(GraphBudget budget) {
+            this.budget = budget;
+        }
+
+        /**
+         * Count the given object, which is about to be cloned, shared or serialized, unless it's already been cloned.
+         * @throws Exceeded If that takes the graph over budget.
+         */
+        void visit(Object obj) {
+            if(obj == null || this.containsKey(obj)) return;
+            if(++this.objects > this.budget.maxObjects) throw Exceeded.INSTANCE;
+            Class<?> cls = obj.getClass();
+            if(obj instanceof String) {
+                this.estimatedBytes += 40L + 2L * ((String) obj).length();
+            } else if(cls.isArray()) {
+                int length = Array.getLength(obj);
+                if(length > this.budget.maxCollectionSize) throw Exceeded.INSTANCE;
+                this.estimatedBytes += 16L + (long) length * sizeOf(cls.getComponentType());
+            } else if(obj instanceof Collection) {
+                int size = ((Collection<?>) obj).size();
+                if(size > this.budget.maxCollectionSize) throw Exceeded.INSTANCE;
+                this.estimatedBytes += 16L + 8L * size;
+            } else if(obj instanceof Map) {
+                int size = ((Map<?, ?>) obj).size();
+                if(size > this.budget.maxCollectionSize) throw Exceeded.INSTANCE;
+                this.estimatedBytes += 16L + 32L * size;
+            } else {
+                this.estimatedBytes += SHALLOW_BYTES.get(cls);
+            }
+            if(this.estimatedBytes > this.budget.maxEstimatedBytes) throw Exceeded.INSTANCE;
+        }
+    }
+
+    /**
+     * Keeps a tally of what's serialized through it, for snapshots.
+     */
+    static class TallyingGenerator extends JsonGeneratorDelegate {
+        private final Tally tally;
+
+        TallyingGenerator(JsonGenerator delegate, Tally tally) {
+            super(delegate, false);
+            this.tally = tally;
+        }
+
+        @Override
+        public void writeStartObject(Object forValue) throws IOException {
+            this.tally.visit(forValue);
+            super.writeStartObject(forValue);
+        }
+
+        @Override
+        public void writeStartObject(Object forValue, int size) throws IOException {
+            this.tally.visit(forValue);
+            super.writeStartObject(forValue, size);
+        }
+
+        @Override
+        public void writeStartArray(Object forValue) throws IOException {
+            this.tally.visit(forValue);
+            super.writeStartArray(forValue);
+        }
+
+        @Override
+        public void writeStartArray(Object forValue, int size) throws IOException {
+            this.tally.visit(forValue);
+            super.writeStartArray(forValue, size);
+        }
+
+        @Override
+        public void writeString(String text) throws IOException {
+            this.tally.visit(text);
+            super.writeString(text);
+        }
+    }
+}
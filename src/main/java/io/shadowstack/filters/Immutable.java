@@ -0,0 +1,16 @@
+package io.shadowstack.filters;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose instances never change once constructed. Object filters pass such
+ * instances through by reference and never traverse them, so a class carrying this
+ * annotation should not have fields that need filtering.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Immutable {
+}
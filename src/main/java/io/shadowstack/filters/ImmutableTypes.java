@@ -0,0 +1,49 @@
+package io.shadowstack.filters;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of types whose instances can be shared instead of copied when filtering. Includes a built-in set of
+ * JDK value types, all enums, classes annotated with @Immutable and any classes registered at runtime.
+ */
+public class ImmutableTypes {
+    private static final Set<Class<?>> BUILT_IN = new HashSet<>(Arrays.asList(
+            Boolean.class, Byte.class, Character.class, Short.class, Integer.class, Long.class, Float.class,
+            Double.class, String.class, BigInteger.class, BigDecimal.class, UUID.class, URI.class, Locale.class,
+            Class.class, Instant.class, Duration.class, Period.class, LocalDate.class, LocalTime.class,
+            LocalDateTime.class, OffsetTime.class, OffsetDateTime.class, ZonedDateTime.class, Year.class,
+            YearMonth.class, MonthDay.class
+    ));
+    private static final Set<Class<?>> REGISTERED = ConcurrentHashMap.newKeySet();
+    private static final ClassValue<Boolean> IMMUTABLE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> cls) {
+            return BUILT_IN.contains(cls) || REGISTERED.contains(cls) || Enum.class.isAssignableFrom(cls) ||
+                   ZoneId.class.isAssignableFrom(cls) || cls.isAnnotationPresent(Immutable.class);
+        }
+    };
+
+    private ImmutableTypes() {}
+
+    public static boolean isImmutable(Class<?> cls) {
+        return cls != null && IMMUTABLE.get(cls);
+    }
+
+    /**
+     * Register classes, typically ones we can't annotate, whose instances never change once constructed.
+     * This should happen at startup: a class already cloned as a member of another object may keep being
+     * cloned in that position.
+     */
+    public static void register(Class<?>... classes) {
+        for(Class<?> cls : classes) {
+            REGISTERED.add(cls);
+            IMMUTABLE.remove(cls);
+            ObjectFilter.registerImmutable(cls);
+        }
+    }
+}
@@ -1,19 +1,91 @@
 package io.shadowstack.filters;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.rits.cloning.Cloner;
 import io.shadowstack.DefaultValue;
+import io.shadowstack.FieldAccessor;
 import io.shadowstack.ReflectiveAccess;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
 
+@Slf4j
 public class ObjectFilter {
-    private static final Cloner CLONER = new Cloner();
+    private static final FilteringCloner CLONER = new FilteringCloner();
     private int objectDepth = 10; // control recursion
+    private int objectCount = 10000; // control the size of what gets captured
+    private int collectionSize = 1000;
+    private long estimatedBytes = 1L << 20;
+    private GraphBudget budget = new GraphBudget(this.objectCount, this.collectionSize, this.estimatedBytes);
+    private final ObjectMapper referenceMapper;
+    private final ObjectMapper evaluatedMapper;
     private final FieldFilter[] constituentFieldFilters;
+    private final ClassValue<FieldPlan[]> plans = new ClassValue<FieldPlan[]>() {
+        @Override
+        protected FieldPlan[] computeValue(Class<?> cls) {
+            return compile(cls);
+        }
+    };
 
     public ObjectFilter(FieldFilter[] constituentFieldFilters) {
         this.constituentFieldFilters = constituentFieldFilters;
+        this.referenceMapper = redactingMapper(constituentFieldFilters, false);
+        this.evaluatedMapper = redactingMapper(constituentFieldFilters, true);
+        for(FieldFilter fieldFilter : constituentFieldFilters) {
+            if(ImmutableTypes.isImmutable(fieldFilter.getTarget())) {
+                String message = "Field filter targets %s, which is immutable and will never be filtered.";
+                log.warn(String.format(message, fieldFilter.getTarget().getSimpleName()));
+            }
+        }
+    }
+
+    /**
+     * Limit the number of distinct objects in a captured graph. Larger graphs are not captured.
+     */
+    public ObjectFilter toObjectCount(int objectCount) {
+        this.objectCount = objectCount;
+        this.budget = new GraphBudget(this.objectCount, this.collectionSize, this.estimatedBytes);
+        return this;
+    }
+
+    /**
+     * Limit the size of any collection, map or array in a captured graph. Larger graphs are not captured.
+     */
+    public ObjectFilter toCollectionSize(int collectionSize) {
+        this.collectionSize = collectionSize;
+        this.budget = new GraphBudget(this.objectCount, this.collectionSize, this.estimatedBytes);
+        return this;
+    }
+
+    /**
+     * Limit the estimated in-memory size of a captured graph. Larger graphs are not captured.
+     */
+    public ObjectFilter toEstimatedBytes(long estimatedBytes) {
+        this.estimatedBytes = estimatedBytes;
+        this.budget = new GraphBudget(this.objectCount, this.collectionSize, this.estimatedBytes);
+        return this;
+    }
+
+    /**
+     * The cloner remembers which classes it has already judged mutable, so classes registered late must be
+     * pushed to it directly.
+     */
+    static void registerImmutable(Class<?> cls) {
+        CLONER.registerImmutable(cls);
     }
 
     public ObjectFilter toObjectDepth(int objectDepth) {
@@ -22,13 +94,15 @@ public class ObjectFilter {
     }
 
     public Object filterAsEvaluatedCopy(Object obj) {
-        Object copy = CLONER.deepClone(obj);
+        if(obj == null || ImmutableTypes.isImmutable(obj.getClass())) return obj;
+        Object copy = this.deepClone(obj);
         this.filter(copy, 0, true);
         return copy;
     }
 
     public Object filterAsReferenceCopy(Object obj) {
-        Object copy = CLONER.deepClone(obj);
+        if(obj == null || ImmutableTypes.isImmutable(obj.getClass())) return obj;
+        Object copy = this.deepClone(obj);
         this.filter(copy, 0, false);
         return copy;
     }
@@ -49,23 +123,278 @@ public class ObjectFilter {
         return copy;
     }
 
+    /**
+     * Produce both the reference and the evaluated copy of the given object with a single deep clone and a
+     * single walk of its graph. Subgraphs that filter identically in both modes are shared between the copies.
+     * An object over this filter's budget is not copied at all and the result is marked as truncated.
+     */
+    public FilteredCopies<Object> filterAsCopies(Object obj) {
+        if(obj == null || ImmutableTypes.isImmutable(obj.getClass())) {
+            return new FilteredCopies<>(obj, obj);
+        }
+        Object reference = this.deepClone(obj);
+        if(reference == null) {
+            return new FilteredCopies<>(null, null, true);
+        }
+        Object evaluated = this.split(reference, 0);
+        return new FilteredCopies<>(reference, evaluated);
+    }
+
+    public FilteredCopies<Object[]> filterAsCopies(Object[] arguments) {
+        Object[] reference = new Object[arguments.length];
+        Object[] evaluated = new Object[arguments.length];
+        boolean truncated = false;
+        for (int i = 0; i < arguments.length; ++i) {
+            FilteredCopies<Object> copies = this.filterAsCopies(arguments[i]);
+            reference[i] = copies.getReference();
+            evaluated[i] = copies.getEvaluated();
+            truncated |= copies.isTruncated();
+        }
+        return new FilteredCopies<>(reference, evaluated, truncated);
+    }
+
+    /**
+     * Produce the reference and evaluated views of the given object as JSON trees, applying field filters while
+     * serializing instead of to a deep clone. The trees serialize exactly as the filtered copies would, so they
+     * hash to the same invocation keys, except that snapshots are filtered at every depth.
+     */
+    public FilteredCopies<Object> filterAsSnapshots(Object obj) {
+        if(obj == null || ImmutableTypes.isImmutable(obj.getClass())) {
+            return new FilteredCopies<>(obj, obj);
+        }
+        try {
+            JsonNode reference = this.snapshot(this.referenceMapper, obj);
+            JsonNode evaluated = this.snapshot(this.evaluatedMapper, obj);
+            return new FilteredCopies<>(reference, evaluated);
+        } catch(GraphBudget.Exceeded e) {
+            log.debug(String.format("Not capturing %s, which is over the object filter's budget.", obj.getClass()));
+        } catch(IOException | RuntimeException e) {
+            log.error(String.format("While taking a snapshot of %s. It will not be captured.", obj.getClass()), e);
+        }
+        return new FilteredCopies<>(null, null, true);
+    }
+
+    /**
+     * Serialize the given object to a tree with the given mapper, keeping this filter's budget as it goes.
+     */
+    private JsonNode snapshot(ObjectMapper mapper, Object obj) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(mapper, false);
+        mapper.writeValue(new GraphBudget.TallyingGenerator(buffer, this.budget.tally()), obj);
+        try(JsonParser parser = buffer.asParser()) {
+            return mapper.readTree(parser);
+        }
+    }
+
+    public FilteredCopies<Object[]> filterAsSnapshots(Object[] arguments) {
+        Object[] reference = new Object[arguments.length];
+        Object[] evaluated = new Object[arguments.length];
+        boolean truncated = false;
+        for (int i = 0; i < arguments.length; ++i) {
+            FilteredCopies<Object> snapshots = this.filterAsSnapshots(arguments[i]);
+            reference[i] = snapshots.getReference();
+            evaluated[i] = snapshots.getEvaluated();
+            truncated |= snapshots.isTruncated();
+        }
+        return new FilteredCopies<>(reference, evaluated, truncated);
+    }
+
+    private static ObjectMapper redactingMapper(FieldFilter[] fieldFilters, boolean isEvaluated) {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.disable(SerializationFeature.WRAP_EXCEPTIONS); // lets a budget being exceeded through as it is
+        mapper.registerModule(new SimpleModule().setSerializerModifier(
+                new RedactingSerializerModifier(fieldFilters, isEvaluated)
+        ));
+        return mapper;
+    }
+
+    /**
+     * @return A deep clone of the given mutable object, or null if its graph is over this filter's budget, which
+     * is found out while cloning it.
+     */
+    private Object deepClone(Object obj) {
+        try {
+            return CLONER.deepClone(obj, this.budget.tally());
+        } catch(GraphBudget.Exceeded e) {
+            log.debug(String.format("Not capturing %s, which is over the object filter's budget.", obj.getClass()));
+        } catch(ConcurrentModificationException e) {
+            log.debug(String.format("Not capturing %s, which was changed while being copied.", obj.getClass()));
+        }
+        return null;
+    }
+
     private void filter(Object obj, int level, boolean isEvaluated) {
-        if(obj == null) return;
-        Class<?> cls = obj.getClass();
-        for(Field field : cls.getDeclaredFields()) {
-            field.setAccessible(true);
-            for(FieldFilter fieldFilter : this.constituentFieldFilters) {
-                if(isEvaluated) {
-                    obj = fieldFilter.filterAsEvaluatedCopy(obj, field);
+        if(obj == null || ImmutableTypes.isImmutable(obj.getClass())) return;
+        for(FieldPlan plan : this.plans.get(obj.getClass())) {
+            Object original = plan.get(obj);
+            Object member = plan.generate(original, isEvaluated);
+            if(member != original) {
+                plan.set(obj, member);
+            }
+            if(level < this.objectDepth && plan.recursable) {
+                this.filter(member, level + 1, isEvaluated);
+            }
+        }
+    }
+
+    /**
+     * Filter the given object in place as a reference copy and return its evaluated counterpart. Only objects
+     * on the path to a member that differs between the two modes are shallow cloned for the evaluated side;
+     * everything else is shared.
+     */
+    private Object split(Object obj, int level) {
+        if(obj == null || ImmutableTypes.isImmutable(obj.getClass())) return obj;
+        FieldPlan[] fieldPlans = this.plans.get(obj.getClass());
+        Object[] evaluatedMembers = null;
+        boolean[] differs = null;
+        for(int i = 0; i < fieldPlans.length; ++i) {
+            FieldPlan plan = fieldPlans[i];
+            Object original = plan.get(obj);
+            Object reference = plan.generate(original, false);
+            Object evaluated = plan.generate(original, true);
+            if(reference != original) {
+                plan.set(obj, reference);
+            }
+            if(level < this.objectDepth && plan.recursable) {
+                if(evaluated == reference) {
+                    evaluated = this.split(reference, level + 1);
                 } else {
-                    obj = fieldFilter.filterAsReferenceCopy(obj, field);
+                    this.filter(reference, level + 1, false);
+                    this.filter(evaluated, level + 1, true);
                 }
             }
-            boolean filterable = (DefaultValue.of(field.getType()) == null) && !Modifier.isStatic(field.getModifiers());
-            if(level < this.objectDepth && filterable) {
-                Object member = ReflectiveAccess.getMember(obj, field);
-                this.filter(member, level + 1, isEvaluated);
+            if(evaluated != reference) {
+                if(differs == null) {
+                    evaluatedMembers = new Object[fieldPlans.length];
+                    differs = new boolean[fieldPlans.length];
+                }
+                evaluatedMembers[i] = evaluated;
+                differs[i] = true;
+            }
+        }
+        if(differs == null) {
+            return obj;
+        }
+        Object copy = CLONER.shallowClone(obj);
+        for(int i = 0; i < fieldPlans.length; ++i) {
+            if(differs[i]) {
+                fieldPlans[i].set(copy, evaluatedMembers[i]);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Work out, once per class, which of its instance fields (including inherited ones) are touched by
+     * which field filters and which of them can hold an object worth recursing into. Fields reached by a
+     * generated copier are read and written through it rather than reflectively.
+     */
+    private FieldPlan[] compile(Class<?> cls) {
+        List<FieldPlan> fieldPlans = new ArrayList<>();
+        GeneratedCopier<Object> copier = GeneratedCopiers.of(cls);
+        List<String> copiedFields = (copier == null)? new ArrayList<>() : Arrays.asList(copier.fieldNames());
+        for(Class<?> current = cls; current != null && current != Object.class; current = current.getSuperclass()) {
+            for(Field field : current.getDeclaredFields()) {
+                if(Modifier.isStatic(field.getModifiers())) continue;
+                int index = (current == cls)? copiedFields.indexOf(field.getName()) : -1;
+                if(index < 0) {
+                    try {
+                        field.setAccessible(true);
+                    } catch(RuntimeException e) {
+                        String message = "Can't access field %s of %s. It will not be filtered.";
+                        log.warn(String.format(message, field.getName(), cls.getSimpleName()));
+                        continue;
+                    }
+                }
+                List<FieldFilter> applicable = new ArrayList<>();
+                for(FieldFilter fieldFilter : this.constituentFieldFilters) {
+                    if(fieldFilter.appliesTo(cls, field)) {
+                        applicable.add(fieldFilter);
+                    }
+                }
+                boolean recursable = DefaultValue.of(field.getType()) == null;
+                if(recursable || !applicable.isEmpty()) {
+                    FieldFilter[] fieldFilters = applicable.toArray(new FieldFilter[0]);
+                    FieldAccessor accessor = (index < 0)? ReflectiveAccess.accessor(field) : null;
+                    fieldPlans.add(new FieldPlan(accessor, copier, index, fieldFilters, recursable));
+                }
+            }
+        }
+        return fieldPlans.toArray(new FieldPlan[0]);
+    }
+
+    /**
+     * Shares immutable objects instead of cloning them, copies objects of classes with a generated copier without
+     * reflection, and keeps a graph's budget while deep cloning it.
+     */
+    private static class FilteringCloner extends Cloner {
+        @Override
+        protected boolean considerImmutable(Class<?> cls) {
+            return ImmutableTypes.isImmutable(cls);
+        }
+
+        /**
+         * @throws GraphBudget.Exceeded As soon as the clone goes over the tally's budget.
+         */
+        private <T> T deepClone(T obj, GraphBudget.Tally tally) {
+            return this.cloneInternal(obj, tally);
+        }
+
+        /**
+         * Called for every object the clone reaches. A null clones map means a shallow clone.
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        protected <T> T cloneInternal(T obj, Map<Object, Object> clones) {
+            if(clones instanceof GraphBudget.Tally) {
+                ((GraphBudget.Tally) clones).visit(obj);
+            }
+            GeneratedCopier<Object> copier = (obj == null)? null : GeneratedCopiers.of(obj.getClass());
+            if(copier == null) {
+                return super.cloneInternal(obj, clones);
+            }
+            Object copy = (clones == null)? null : clones.get(obj);
+            if(copy == null) {
+                copy = this.newInstance(obj.getClass());
+                if(clones == null) {
+                    copier.copyInto(obj, copy, UnaryOperator.identity());
+                } else {
+                    clones.put(obj, copy);
+                    copier.copyInto(obj, copy, member -> this.cloneInternal(member, clones));
+                }
+            }
+            return (T) copy;
+        }
+    }
+
+    /**
+     * How to filter one field: through the class's generated copier if it has one, else reflectively.
+     */
+    @AllArgsConstructor
+    private static class FieldPlan {
+        private final FieldAccessor accessor;
+        private final GeneratedCopier<Object> copier;
+        private final int index;
+        private final FieldFilter[] fieldFilters;
+        private final boolean recursable;
+
+        private Object get(Object obj) {
+            return (this.accessor != null)? this.accessor.get(obj) : this.copier.get(obj, this.index);
+        }
+
+        private void set(Object obj, Object member) {
+            if(this.accessor != null) {
+                this.accessor.set(obj, member);
+            } else {
+                this.copier.set(obj, this.index, member);
+            }
+        }
+
+        private Object generate(Object member, boolean isEvaluated) {
+            for(int i = 0; i < this.fieldFilters.length && member != null; ++i) {
+                FieldFilter fieldFilter = this.fieldFilters[i];
+                member = isEvaluated? fieldFilter.generateEvaluated(member) : fieldFilter.generateReference(member);
             }
+            return member;
         }
     }
 }
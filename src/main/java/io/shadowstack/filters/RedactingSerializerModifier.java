@@ -0,0 +1,91 @@
+package io.shadowstack.filters;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.introspect.AnnotatedField;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies field filters while serializing, rather than to a copy of the object. Jackson builds and caches a
+ * serializer once per class, so the fields each filter applies to are only worked out once per class.
+ */
+class RedactingSerializerModifier extends BeanSerializerModifier {
+    private final FieldFilter[] fieldFilters;
+    private final boolean isEvaluated;
+
+    RedactingSerializerModifier(FieldFilter[] fieldFilters, boolean isEvaluated) {
+        this.fieldFilters = fieldFilters;
+        this.isEvaluated = isEvaluated;
+    }
+
+    @Override
+    public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc,
+                                                     List<BeanPropertyWriter> beanProperties) {
+        Class<?> cls = beanDesc.getBeanClass();
+        List<BeanPropertyWriter> changed = new ArrayList<>(beanProperties.size());
+        for(BeanPropertyWriter writer : beanProperties) {
+            Field field = findField(cls, writer);
+            List<FieldFilter> applicable = new ArrayList<>();
+            if(field != null) {
+                for(FieldFilter fieldFilter : this.fieldFilters) {
+                    if(fieldFilter.appliesTo(cls, field)) {
+                        applicable.add(fieldFilter);
+                    }
+                }
+            }
+            if(applicable.isEmpty()) {
+                changed.add(writer);
+            } else {
+                changed.add(new RedactingWriter(writer, applicable.toArray(new FieldFilter[0]), this.isEvaluated));
+            }
+        }
+        return changed;
+    }
+
+    private static Field findField(Class<?> cls, BeanPropertyWriter writer) {
+        if(writer.getMember() instanceof AnnotatedField) {
+            return ((AnnotatedField) writer.getMember()).getAnnotated();
+        }
+        // Usually a getter, so look for the field it exposes.
+        for(Class<?> current = cls; current != null && current != Object.class; current = current.getSuperclass()) {
+            try {
+                return current.getDeclaredField(writer.getName());
+            } catch (NoSuchFieldException ignored) { }
+        }
+        return null;
+    }
+
+    private static class RedactingWriter extends BeanPropertyWriter {
+        private static final long serialVersionUID = 4469163735012946387L;
+        private final FieldFilter[] fieldFilters;
+        private final boolean isEvaluated;
+
+        private RedactingWriter(BeanPropertyWriter base, FieldFilter[] fieldFilters, boolean isEvaluated) {
+            super(base);
+            this.fieldFilters = fieldFilters;
+            this.isEvaluated = isEvaluated;
+        }
+
+        @Override
+        public void serializeAsField(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+            Object member = this.get(bean);
+            for(int i = 0; i < this.fieldFilters.length && member != null; ++i) {
+                FieldFilter fieldFilter = this.fieldFilters[i];
+                member = this.isEvaluated? fieldFilter.generateEvaluated(member) : fieldFilter.generateReference(member);
+            }
+            gen.writeFieldName(this._name);
+            if(member == null) {
+                prov.defaultSerializeNull(gen);
+            } else {
+                prov.defaultSerializeValue(member, gen);
+            }
+        }
+    }
+}
@@ -1,64 +1,180 @@
 package io.shadowstack.incumbents;
 
+import io.shadowstack.ProxyFactory;
 import io.shadowstack.invocations.Invocation;
 import io.shadowstack.invocations.InvocationContext;
+import io.shadowstack.invocations.KeyFragmentCache;
+import io.shadowstack.invocations.InvocationKey;
+import io.shadowstack.invocations.KeyHasher;
 import io.shadowstack.throttles.Throttle;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import net.sf.cglib.proxy.Enhancer;
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.MethodProxy;
+import io.shadowstack.filters.FilteredCopies;
 import io.shadowstack.filters.ObjectFilter;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.FluxSink;
-import reactor.core.scheduler.Scheduler;
-import reactor.core.scheduler.Schedulers;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.function.Consumer;
+import java.util.Arrays;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 @Slf4j
-public class InvocationRecorder implements MethodInterceptor, Consumer<FluxSink<Invocation>> {
-    private static final ScheduledExecutorService THREAD_POOL =
-            Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
-    private static final Scheduler SCHEDULER = Schedulers.fromExecutorService(THREAD_POOL);
-    private final Set<FluxSink<Invocation>> listeners = new HashSet<>();
-    private Flux<Invocation> flux;
-    private ObjectFilter objectFilter;
+public class InvocationRecorder implements MethodInterceptor, AutoCloseable {
+    @SuppressWarnings("unchecked")
+    private volatile RingBuffer<Invocation>[] queues = new RingBuffer[0]; // one per sink, read without locking
+    private int queueCapacity = RingBuffer.DEFAULT_CAPACITY;
+    private volatile RecorderPolicy policy = RecorderPolicy.DEFAULT;
+    private boolean snapshotting = false;
+    private KeyHasher keyHasher = KeyHasher.SHA_256;
+    private KeyFragmentCache keyFragmentCache = null;
     @Getter private final Object originalInstance;
-    @Getter private Throttle throttle = null;
 
     public InvocationRecorder(Object originalInstance) {
         this.originalInstance = originalInstance;
     }
 
     public InvocationRecorder filteringWith(ObjectFilter filter) {
-        this.objectFilter = filter;
+        return this.updatingPolicy(p -> p.toBuilder().objectFilter(filter).build());
+    }
+
+    /**
+     * Capture arguments and results as filtered JSON snapshots, taken while serializing them once per view,
+     * rather than as filtered deep clones. The recorded invocation then holds JSON trees instead of objects.
+     */
+    public InvocationRecorder snapshotting() {
+        this.snapshotting = true;
+        return this;
+    }
+
+    /**
+     * Hash invocation keys with the given hasher. Replayers must use the same one to find these recordings.
+     */
+    public InvocationRecorder hashingWith(KeyHasher keyHasher) {
+        this.keyHasher = keyHasher;
+        return this;
+    }
+
+    /**
+     * Reuse the serialized form of immutable arguments seen before when hashing invocation keys.
+     */
+    public InvocationRecorder memoizingKeysWith(KeyFragmentCache keyFragmentCache) {
+        this.keyFragmentCache = keyFragmentCache;
         return this;
     }
 
     public InvocationRecorder throttlingTo(Throttle throttle) {
-        this.throttle = throttle;
+        return this.updatingPolicy(p -> p.toBuilder().throttle(throttle).build());
+    }
+
+    /**
+     * Don't record calls to methods the given predicate matches. They cost no more than a lookup in a cache.
+     */
+    public InvocationRecorder excluding(Predicate<Method> methods) {
+        return this.forMethods(methods, RecorderPolicy.MethodPolicy.builder().enabled(false).build());
+    }
+
+    /**
+     * Record calls to methods the given predicate matches as the given policy says, over anything set before.
+     */
+    public InvocationRecorder forMethods(Predicate<Method> methods, RecorderPolicy.MethodPolicy policy) {
+        RecorderPolicy.MethodRule rule = new RecorderPolicy.MethodRule(methods, policy);
+        return this.updatingPolicy(p -> p.toBuilder().rule(rule).build());
+    }
+
+    public Throttle getThrottle() {
+        return this.policy.getThrottle();
+    }
+
+    public RecorderPolicy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * Replace this recorder's policy, including the filter and throttle set so far. May be called at any time,
+     * before or after building proxies; calls already underway finish under the policy they started with.
+     */
+    public InvocationRecorder usingPolicy(RecorderPolicy policy) {
+        this.policy = (policy != null)? policy : RecorderPolicy.DEFAULT;
         return this;
     }
 
-    public InvocationRecorder sendingTo(InvocationSink invocationSink) {
-        this.flux = Flux.create(this, FluxSink.OverflowStrategy.DROP);
-        this.flux.publishOn(SCHEDULER)
-                 .subscribeOn(SCHEDULER)
-                 .buffer(invocationSink.getBatchSize())
-                 .subscribe(invocationSink);
+    /**
+     * Replace this recorder's policy with the given function of it, atomically with respect to other updates.
+     */
+    public synchronized InvocationRecorder updatingPolicy(UnaryOperator<RecorderPolicy> update) {
+        return this.usingPolicy(update.apply(this.policy));
+    }
+
+    /**
+     * Hold up to the given number of invocations waiting for each sink added after this, dropping any beyond it.
+     */
+    public InvocationRecorder queueingUpTo(int capacity) {
+        this.queueCapacity = capacity;
         return this;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Hand recorded invocations to the given sink through a queue of its own. Recording threads only ever add to
+     * the queue, without waiting or allocating, and the threads shared by every queue pass them on to the sink.
+     * A sink can only be given to one recorder at a time; any other queue it's given is dropped from.
+     */
+    public synchronized InvocationRecorder sendingTo(InvocationSink invocationSink) {
+        RingBuffer<Invocation> queue = new RingBuffer<>(this.queueCapacity);
+        queue.flux().subscribe(invocationSink);
+        RingBuffer<Invocation>[] queues = Arrays.copyOf(this.queues, this.queues.length + 1);
+        queues[queues.length - 1] = queue;
+        this.queues = queues;
+        return this;
+    }
+
+    /**
+     * Stop recording into this recorder's sinks. Invocations already queued are still passed on, after which each
+     * sink's subscription completes; invocations recorded from now on are counted as dropped.
+     */
+    @Override
+    public void close() {
+        for(RingBuffer<Invocation> queue : this.queues) {
+            queue.close();
+        }
+    }
+
+    /**
+     * @return How many invocations were added to the queues of this recorder's sinks.
+     */
+    public long getPublishedCount() {
+        long published = 0L;
+        for(RingBuffer<Invocation> queue : this.queues) {
+            published += queue.getPublished();
+        }
+        return published;
+    }
+
+    /**
+     * @return How many invocations were dropped because a sink's queue was full.
+     */
+    public long getDroppedCount() {
+        long dropped = 0L;
+        for(RingBuffer<Invocation> queue : this.queues) {
+            dropped += queue.getDropped();
+        }
+        return dropped;
+    }
+
+    /**
+     * @return How many invocations are waiting in the queues of this recorder's sinks.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for(RingBuffer<Invocation> queue : this.queues) {
+            depth += queue.getDepth();
+        }
+        return depth;
+    }
+
     public <T> T buildProxy(Class<T> cls) {
         if(cls == null || !cls.isInstance(this.originalInstance)) {
             String message = "Invalid combination of class %s and original instance %s. Returning null.";
@@ -66,53 +182,120 @@ public class InvocationRecorder implements MethodInterceptor, Consumer<FluxSink<
             log.warn(String.format(message, className, this.originalInstance.getClass().getSimpleName()));
             return null;
         }
-        return (T) Enhancer.create(cls, this);
+        return ProxyFactory.create(cls, this);
     }
 
+    /**
+     * A call that isn't recorded, because its method is excluded or the throttle rejects it, costs the proxy's own
+     * overhead plus a look-up of what the policy says about the method, which is worked out once per method. On
+     * JDK 8 that comes to some 20-30ns over a direct call (see InvocationRecorderBenchmark), most of it cglib's: the
+     * argument array and boxing of every intercepted call, and the dispatch through its fast class.
+     */
     @Override
     public Object intercept(Object o, Method method, Object[] arguments, MethodProxy proxy) throws Throwable {
-        Throwable exceptionThrown = null;
-        Duration callDuration;
-        Object result = null;
-        Instant start = Instant.now();
+        RecorderPolicy.Resolution resolution = this.policy.resolve(method);
+        if(!resolution.isEnabled()) {
+            return this.dispatch(method, arguments, proxy);
+        }
+        Throttle throttle = resolution.getThrottle();
+        // Decide whether to record before doing anything else, so that a rejected
+        // call costs no more than the delegate call and the throttle check itself.
+        try(Throttle.Call call = new Throttle.Call(method)) {
+            Throttle.Decision decision = (throttle != null)? throttle.decide(call) : Throttle.Decision.RECORD;
+            if(decision == null) {
+                return this.dispatch(method, arguments, proxy);
+            }
+            // The context is opened before the call, if the throttle hasn't already, so that calls nested within it
+            // share its ID, and so that a throttle going by the ID makes the same decision for all of them.
+            InvocationContext context = call.getContext();
+
+            Throwable exceptionThrown = null;
+            Object result = null;
+            long start = System.nanoTime();
+
+            try {
+                result = this.dispatch(method, arguments, proxy);
+            } catch(Throwable t) {
+                exceptionThrown = t;
+            }
+
+            long end = System.nanoTime();
+            Duration callDuration = Duration.ofNanos(end - start);
+            this.record(context, resolution, decision, arguments, result, exceptionThrown, callDuration);
+            if(throttle != null) {
+                Duration captureDuration = Duration.ofNanos(System.nanoTime() - end);
+                decision.recorded(callDuration, captureDuration, this.backlog());
+            }
+
+            if(exceptionThrown != null) {
+                throw exceptionThrown;
+            }
+
+            return result;
+        }
+    }
 
+    /**
+     * Call the original instance through the method proxy's generated fast class, which cglib builds once per
+     * method and which avoids the access checks and argument boxing of reflection. Non-public methods can't be
+     * reached that way, so they fall back to reflective invocation.
+     */
+    private Object dispatch(Method method, Object[] arguments, MethodProxy proxy) throws Throwable {
+        if(proxy != null && Modifier.isPublic(method.getModifiers())) {
+            return proxy.invoke(this.originalInstance, arguments);
+        }
         try {
-            result = method.invoke(this.originalInstance, arguments);
+            return method.invoke(this.originalInstance, arguments);
         } catch(InvocationTargetException ite) {
-            exceptionThrown = ite.getTargetException();
-        } catch(Throwable t) {
-            exceptionThrown = t;
-        } finally {
-            callDuration = Duration.between(start, Instant.now());
+            throw ite.getTargetException();
         }
+    }
+
+    /**
+     * @return The largest fraction of any sink's queue that's in use, between 0 and 1.
+     */
+    private double backlog() {
+        double backlog = 0.0D;
+        for(RingBuffer<Invocation> queue : this.queues) {
+            backlog = Math.max(backlog, queue.getDepth() / (double) queue.getCapacity());
+        }
+        return backlog;
+    }
 
-        try(InvocationContext context = new InvocationContext()) {
+    private void record(InvocationContext context, RecorderPolicy.Resolution resolution, Throttle.Decision decision,
+                        Object[] arguments, Object result, Throwable exceptionThrown, Duration callDuration) {
+        ObjectFilter objectFilter = resolution.getObjectFilter();
+        try {
+            FilteredCopies<Object[]> argumentCopies = this.snapshotting?
+                    objectFilter.filterAsSnapshots(arguments) : objectFilter.filterAsCopies(arguments);
+            FilteredCopies<Object> resultCopies = this.snapshotting?
+                    objectFilter.filterAsSnapshots(result) : objectFilter.filterAsCopies(result);
             Invocation invocation = new Invocation(
-                    method, context,
-                    this.objectFilter.filterAsReferenceCopy(arguments),
-                    this.objectFilter.filterAsReferenceCopy(result),
-                    this.objectFilter.filterAsEvaluatedCopy(arguments),
-                    this.objectFilter.filterAsEvaluatedCopy(result),
-                    exceptionThrown, callDuration
+                    new InvocationKey(
+                            resolution.getDescriptor(),
+                            argumentCopies.getEvaluated(),
+                            this.keyHasher,
+                            this.keyFragmentCache
+                    ),
+                    context,
+                    argumentCopies.getReference(),
+                    resultCopies.getReference(),
+                    argumentCopies.getEvaluated(),
+                    resultCopies.getEvaluated(),
+                    exceptionThrown, callDuration,
+                    argumentCopies.isTruncated() || resultCopies.isTruncated()
             );
-            if(this.getThrottle() == null || !this.getThrottle().reject()) {
-                this.listeners.forEach(l -> l.next(invocation));
+            if(decision.reject(invocation.getInvocationKey())) {
+                return;
+            }
+            for(RingBuffer<Invocation> queue : this.queues) {
+                queue.offer(invocation);
             }
         } catch(Throwable t) {
             String message = "While intercepting recorded incumbents. Method=%s, Args=%d, Object=%s.";
             String className = this.originalInstance.getClass().getSimpleName();
-            log.error(String.format(message, method.getName(), arguments.length, className), t);
-        }
-
-        if(exceptionThrown != null) {
-            throw exceptionThrown;
+            String methodName = resolution.getDescriptor().getMethodName();
+            log.error(String.format(message, methodName, arguments.length, className), t);
         }
-
-        return result;
-    }
-
-    @Override
-    public void accept(FluxSink<Invocation> listener) {
-        this.listeners.add(listener); // TODO: Support full subscription life-cycle, with removal of listeners?
     }
 }
@@ -1,22 +1,69 @@
 package io.shadowstack.incumbents;
 
 import io.shadowstack.invocations.Invocation;
+import io.shadowstack.invocations.destinations.AsyncInvocationDestination;
 import io.shadowstack.invocations.destinations.InvocationDestination;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * A reactive sink for Invocations to be sent to an InvocationDestination.
+ * A reactive sink for Invocations to be sent to an InvocationDestination. Invocations are gathered into batches,
+ * each sent once it reaches the batch size or, if a linger time is set, once its first invocation has waited that
+ * long, whichever comes first. Batches are sent on threads of their own, up to a given number at a time, so a slow
+ * destination holds up neither the recorder nor other sinks; sends to an {@link AsyncInvocationDestination} take
+ * none of the sink's threads while they wait. The sink only asks for more invocations when there's
+ * room to send them: while as many batches as allowed are in flight, invocations wait in the recorder's queue.
+ * Whichever thread has news for the sink (an invocation, a lingering batch, a finished send) hands it to a drain
+ * loop that runs on one thread at a time, which alone decides what to send and asks the publisher for more.
+ * A sink takes invocations from one publisher at a time, so each recorder needs a sink of its own; a sink that's
+ * subscribed again before its publisher completes cancels the new subscription.
  */
 @Slf4j
-public class InvocationSink implements Subscriber<List<Invocation>> {
+public class InvocationSink implements Subscriber<Invocation> {
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "invocation-sink-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicInteger SENDER_IDS = new AtomicInteger();
+    private static final ExecutorService SENDERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "invocation-sink-sender-" + SENDER_IDS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
     private final InvocationDestination destination;
-    private Subscription subscription = null;
+    private final AtomicReference<Subscription> subscription = new AtomicReference<>();
     @Getter private int batchSize = 1;
+    private long lingerNanos = 0L;
+    private long targetSendNanos = 0L;
+    private int maxInFlight = 1;
+    private long initialBackoffNanos = 0L;
+    private long deadlineNanos = 0L;
+    private volatile int currentBatchSize = 1;
+    private final AtomicInteger drains = new AtomicInteger(); // drain requests not yet seen by the drain loop
+    // Guarded by this
+    private List<Invocation> batch = new ArrayList<>();
+    private long batchNumber = 0L;
+    private ScheduledFuture<?> lingerTimer = null;
+    private boolean lingered = false;
+    private boolean flushing = false;
+    private int inFlight = 0;
+    private long deferredDemand = 0L;
 
     public InvocationSink(InvocationDestination destination) {
         this.destination = destination;
@@ -29,32 +76,263 @@ public class InvocationSink implements Subscriber<List<Invocation>> {
             log.warn(String.format(fmt, this.batchSize));
             this.batchSize = 1;
         }
+        this.currentBatchSize = this.batchSize;
         return this;
     }
 
+    /**
+     * Send a batch that isn't full yet once its first invocation has waited the given time, so that invocations
+     * of rarely called methods aren't held indefinitely. By default, batches are only sent when full.
+     */
+    public InvocationSink lingeringFor(long timeDuration, TimeUnit timeUnit) {
+        this.lingerNanos = timeUnit.toNanos(timeDuration);
+        return this;
+    }
+
+    /**
+     * Vary the batch size, up to the one set with {@link #withBatchSize}, to keep each send close to the given
+     * time. Sends taking longer than that shrink the batch and sends taking less grow it, so batches become as
+     * large as the destination can take in that time, however big the invocations are and however fast it is.
+     */
+    public InvocationSink adaptingBatchSizeTo(long targetSendTime, TimeUnit timeUnit) {
+        this.targetSendNanos = timeUnit.toNanos(targetSendTime);
+        return this;
+    }
+
+    /**
+     * Allow up to the given number of batches to be in flight to the destination at once. The default is one.
+     */
+    public InvocationSink sendingConcurrently(int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        return this;
+    }
+
+    /**
+     * Retry failed sends after a backoff that starts at the given time and doubles with each attempt, randomized
+     * so that sinks don't retry in step, for as long as the next attempt would start within the given deadline
+     * of the first. A batch that can't be sent by then is logged and dropped. By default, sends aren't retried.
+     */
+    public InvocationSink retrying(long initialBackoff, long deadline, TimeUnit timeUnit) {
+        this.initialBackoffNanos = timeUnit.toNanos(initialBackoff);
+        this.deadlineNanos = timeUnit.toNanos(deadline);
+        return this;
+    }
+
+    /**
+     * @return The number of invocations batches are currently sent at, which only differs from the batch size
+     * when adapting it.
+     */
+    public int getCurrentBatchSize() {
+        return this.currentBatchSize;
+    }
+
+    /**
+     * @return The number of batches being sent or waiting to be retried.
+     */
+    public synchronized int getInFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * Take invocations from the given subscription, unless this sink already has one, in which case the given one
+     * is cancelled (Reactive Streams rule 2.5): demand for a single batch can't be shared fairly between publishers.
+     */
     @Override
     public void onSubscribe(Subscription subscription) {
-        this.subscription = subscription;
-        this.subscription.request(this.batchSize);
+        if(!this.subscription.compareAndSet(null, subscription)) {
+            log.error("InvocationSink was subscribed to while already subscribed. Cancelling the new subscription; " +
+                      "give each recorder a sink of its own.");
+            subscription.cancel();
+            return;
+        }
+        synchronized(this) {
+            this.deferredDemand = this.currentBatchSize;
+        }
+        this.drain();
     }
 
     @Override
-    public void onNext(List<Invocation> invocations) {
+    public void onNext(Invocation invocation) {
+        synchronized(this) {
+            this.batch.add(invocation);
+            if(this.batch.size() == 1 && this.lingerNanos > 0L) {
+                long number = this.batchNumber;
+                this.lingerTimer = TIMER.schedule(() -> this.linger(number), this.lingerNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        this.drain();
+    }
+
+    /**
+     * Mark the given batch as having lingered, unless it's already been sent: a timer that fires just as its batch
+     * is taken mustn't hurry the next one.
+     */
+    private void linger(long number) {
+        synchronized(this) {
+            if(number != this.batchNumber) return;
+            this.lingered = true;
+        }
+        this.drain();
+    }
+
+    /**
+     * Send whatever has been gathered so far, even if that means exceeding the number of batches in flight.
+     */
+    public void flush() {
+        synchronized(this) {
+            this.flushing = true;
+        }
+        this.drain();
+    }
+
+    /**
+     * Send the batches that are ready to go and ask for more invocations when another batch may be sent. Only one
+     * thread runs the loop at a time, so requests reach the subscription one after another (Reactive Streams rule
+     * 2.7); a thread finding it under way leaves its news to the running loop, which goes round again for it.
+     */
+    private void drain() {
+        if(this.drains.getAndIncrement() != 0) return;
+        int missed = 1;
+        do {
+            List<Invocation> next;
+            while((next = this.nextBatch()) != null) {
+                this.start(next, 1, System.nanoTime() + this.deadlineNanos);
+            }
+            long demand = this.takeDemand();
+            Subscription subscription = this.subscription.get();
+            if(demand > 0L && subscription != null) {
+                subscription.request(demand);
+            }
+            missed = this.drains.addAndGet(-missed);
+        } while(missed != 0);
+    }
+
+    /**
+     * @return The batch gathered so far if it's full or has lingered and there's room for it in flight, or if it's
+     * being flushed, as one more in flight; otherwise null.
+     */
+    private synchronized List<Invocation> nextBatch() {
+        boolean ready = this.flushing || (this.inFlight < this.maxInFlight &&
+                (this.batch.size() >= this.currentBatchSize || this.lingered));
+        this.flushing = false;
+        if(!ready || this.batch.isEmpty()) return null;
+        List<Invocation> taken = this.batch;
+        this.batch = new ArrayList<>(this.currentBatchSize);
+        ++this.batchNumber;
+        this.lingered = false;
+        if(this.lingerTimer != null) {
+            this.lingerTimer.cancel(false);
+            this.lingerTimer = null;
+        }
+        ++this.inFlight;
+        this.deferredDemand += taken.size();
+        return taken;
+    }
+
+    /**
+     * @return How many invocations to ask for: as many as were taken to be sent, once another batch may be sent.
+     */
+    private synchronized long takeDemand() {
+        if(this.inFlight >= this.maxInFlight) return 0L;
+        long demand = this.deferredDemand;
+        this.deferredDemand = 0L;
+        return demand;
+    }
+
+    /**
+     * Start an attempt at sending the given batch: straight away for an asynchronous destination, or on a sender
+     * thread for any other.
+     */
+    private void start(List<Invocation> invocations, int attempt, long deadline) {
+        if(this.destination instanceof AsyncInvocationDestination) {
+            this.attempt(invocations, attempt, deadline);
+        } else {
+            SENDERS.execute(() -> this.attempt(invocations, attempt, deadline));
+        }
+    }
+
+    private void attempt(List<Invocation> invocations, int attempt, long deadline) {
+        long start = System.nanoTime();
+        CompletableFuture<?> sent;
         try {
-            this.destination.send(invocations);
+            sent = (this.destination instanceof AsyncInvocationDestination)?
+                    ((AsyncInvocationDestination) this.destination).sendAsync(invocations) :
+                    CompletableFuture.completedFuture(this.destination.send(invocations));
         } catch (Throwable t) {
+            CompletableFuture<Object> failed = new CompletableFuture<>();
+            failed.completeExceptionally(t);
+            sent = failed;
+        }
+        sent.whenComplete((saved, t) -> this.attempted(invocations, attempt, deadline, System.nanoTime() - start, t));
+    }
+
+    private void attempted(List<Invocation> invocations, int attempt, long deadline, long sendNanos, Throwable t) {
+        if(t == null) {
+            if(this.targetSendNanos > 0L) {
+                this.adapt(invocations.size(), sendNanos);
+            }
+        } else {
+            if(t instanceof CompletionException && t.getCause() != null) {
+                t = t.getCause();
+            }
+            long backoff = this.backoff(attempt);
+            if(this.initialBackoffNanos > 0L && System.nanoTime() + backoff - deadline < 0L) {
+                String message = "While sending %d invocations to %s (attempt %d). Retrying in %dms.";
+                log.warn(String.format(message, invocations.size(), this.destination, attempt, backoff / 1000000L), t);
+                TIMER.schedule(() -> this.start(invocations, attempt + 1, deadline), backoff, TimeUnit.NANOSECONDS);
+                return;
+            }
             log.error(String.format("While sending %s to %s.", invocations, this.destination), t);
         }
-        this.subscription.request(this.batchSize + 1);
+        this.completed();
+    }
+
+    /**
+     * Free the batch's place in flight, for the batch gathered since or for more invocations.
+     */
+    private void completed() {
+        synchronized(this) {
+            --this.inFlight;
+        }
+        this.drain();
+    }
+
+    /**
+     * @return Half the exponential backoff for the given attempt plus a random part of the other half.
+     */
+    private long backoff(int attempt) {
+        long exponential = this.initialBackoffNanos << Math.min(attempt - 1, 20);
+        return exponential / 2L + ThreadLocalRandom.current().nextLong(exponential / 2L + 1L);
+    }
+
+    /**
+     * Move the batch size halfway towards the size that would have taken the target time, taking the time per
+     * send to grow in proportion to its size. Batches sent early for lingering only say something about the
+     * size when they took too long.
+     */
+    private void adapt(int sent, long sendNanos) {
+        int current = this.currentBatchSize;
+        if(sent < current && sendNanos <= this.targetSendNanos) {
+            return;
+        }
+        double ideal = sent * (double) this.targetSendNanos / Math.max(sendNanos, 1L);
+        long next = Math.round(current + (ideal - current) / 2.0D);
+        this.currentBatchSize = (int) Math.max(1L, Math.min(this.batchSize, next));
     }
 
+    /**
+     * The recorder's queue doesn't fail, so this is unexpected. Whatever was gathered is still sent.
+     */
     @Override
     public void onError(Throwable throwable) {
         log.error(this.getClass().getCanonicalName(), throwable);
+        this.flush();
+        this.subscription.set(null);
     }
 
     @Override
     public void onComplete() {
-        this.subscription = null;
+        this.flush();
+        this.subscription.set(null);
     }
 }
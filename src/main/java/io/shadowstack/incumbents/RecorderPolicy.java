@@ -0,0 +1,108 @@
+package io.shadowstack.incumbents;
+
+import io.shadowstack.filters.ObjectFilter;
+import io.shadowstack.invocations.MethodDescriptor;
+import io.shadowstack.throttles.Throttle;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Singular;
+import lombok.ToString;
+import lombok.Value;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * What an {@link InvocationRecorder} records and how: whether recording is on, the throttle and the filter, and
+ * overrides of any of these for methods matching a rule or with a given name. Rules apply in the order they were
+ * added, each over the ones before it, and overrides by name apply over all of them. Policies are immutable, so a
+ * recorder can have its policy swapped for another at any time and calls already underway carry on with the one
+ * they started with. What applies to each method is worked out on its first call and remembered by the policy.
+ */
+@Value
+@Builder(toBuilder = true)
+public class RecorderPolicy {
+    public static final RecorderPolicy DEFAULT = RecorderPolicy.builder().build();
+    @Builder.Default boolean enabled = true;
+    Throttle throttle;
+    ObjectFilter objectFilter;
+    @Singular List<MethodRule> rules;
+    @Singular Map<String, MethodPolicy> methods;
+    @ToString.Exclude @EqualsAndHashCode.Exclude
+    private final transient Map<Method, Resolution> resolutions = new ConcurrentHashMap<>();
+
+    /**
+     * @return Everything this policy says about calls to the given method.
+     */
+    public Resolution resolve(Method method) {
+        Resolution resolution = this.resolutions.get(method);
+        return (resolution != null)? resolution : this.resolutions.computeIfAbsent(method, this::newResolution);
+    }
+
+    public boolean isEnabled(Method method) {
+        return this.resolve(method).isEnabled();
+    }
+
+    public Throttle getThrottle(Method method) {
+        return this.resolve(method).getThrottle();
+    }
+
+    public ObjectFilter getObjectFilter(Method method) {
+        return this.resolve(method).getObjectFilter();
+    }
+
+    private Resolution newResolution(Method method) {
+        boolean enabled = this.enabled;
+        Throttle throttle = this.throttle;
+        ObjectFilter objectFilter = this.objectFilter;
+        for(MethodRule rule : this.rules) {
+            if(rule.getMatches().test(method)) {
+                MethodPolicy override = rule.getPolicy();
+                enabled = (override.getEnabled() != null)? override.getEnabled() : enabled;
+                throttle = (override.getThrottle() != null)? override.getThrottle() : throttle;
+                objectFilter = (override.getObjectFilter() != null)? override.getObjectFilter() : objectFilter;
+            }
+        }
+        MethodPolicy override = this.methods.get(method.getName());
+        if(override != null) {
+            enabled = (override.getEnabled() != null)? override.getEnabled() : enabled;
+            throttle = (override.getThrottle() != null)? override.getThrottle() : throttle;
+            objectFilter = (override.getObjectFilter() != null)? override.getObjectFilter() : objectFilter;
+        }
+        return new Resolution(MethodDescriptor.of(method), enabled, throttle, objectFilter);
+    }
+
+    /**
+     * Overrides for some methods. Anything left null falls back to what applied before.
+     */
+    @Value
+    @Builder(toBuilder = true)
+    public static class MethodPolicy {
+        Boolean enabled;
+        Throttle throttle;
+        ObjectFilter objectFilter;
+    }
+
+    /**
+     * Overrides for the methods the given predicate matches.
+     */
+    @Value
+    public static class MethodRule {
+        Predicate<Method> matches;
+        MethodPolicy policy;
+    }
+
+    /**
+     * What applies to calls to one method.
+     */
+    @Value
+    public static class Resolution {
+        MethodDescriptor descriptor;
+        boolean enabled;
+        Throttle throttle;
+        ObjectFilter objectFilter;
+    }
+}
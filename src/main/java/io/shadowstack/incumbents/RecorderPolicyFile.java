@@ -0,0 +1,223 @@
+package io.shadowstack.incumbents;
+
+import io.shadowstack.filters.ObjectFilter;
+import io.shadowstack.throttles.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the policies of recorders in line with a local properties file, reloading it whenever it changes:
+ * <pre>
+ * enabled=true
+ * throttle=percent 5
+ * filter=default
+ * methods.doSomethingShadowed.throttle=rate 10 per 1 seconds
+ * methods.getName.enabled=false
+ * </pre>
+ * Throttles are written as {@code none}, {@code percent P}, {@code contexts P}, {@code overhead P}, or one of
+ * {@code rate}, {@code window} and {@code novel} followed by {@code N per D UNIT}. Filters are referred to by the
+ * names they were registered under with {@link #withFilter}. Whatever the file leaves out is taken from the policy
+ * each recorder had when it was attached. A file that can't be read or parsed is logged and the policies already
+ * in place are kept. Throttles are built afresh for each recorder on each reload, so their counts start over.
+ * The file is taken to have changed if its modification time, size or contents have, since a quick edit may
+ * leave the time as it was. Recorders are only weakly held, so attaching one doesn't keep it alive.
+ */
+@Slf4j
+public class RecorderPolicyFile implements AutoCloseable {
+    private static final String METHODS = "methods.";
+    private final Path path;
+    private final Map<String, ObjectFilter> filters = new HashMap<>();
+    private final Map<InvocationRecorder, RecorderPolicy> basePolicies = new WeakHashMap<>(); // guarded by this
+    private Properties properties = null;
+    private FileTime lastModified = null;
+    private long lastSize = -1L;
+    private long lastChecksum = -1L;
+    private ScheduledExecutorService watcher = null;
+
+    public RecorderPolicyFile(Path path) {
+        this.path = path;
+    }
+
+    public synchronized RecorderPolicyFile withFilter(String name, ObjectFilter filter) {
+        this.filters.put(name, filter);
+        return this;
+    }
+
+    /**
+     * Keep the given recorder's policy in line with this file, on top of the policy it has now.
+     */
+    public synchronized RecorderPolicyFile applyingTo(InvocationRecorder recorder) {
+        this.basePolicies.put(recorder, recorder.getPolicy());
+        if(this.properties != null) {
+            Properties properties = this.properties;
+            recorder.updatingPolicy(current -> parse(properties, current, this.filters));
+        }
+        return this;
+    }
+
+    /**
+     * Stop keeping the given recorder's policy in line with this file. It keeps the policy it has now.
+     */
+    public synchronized RecorderPolicyFile detach(InvocationRecorder recorder) {
+        this.basePolicies.remove(recorder);
+        return this;
+    }
+
+    /**
+     * Load the file now, then look for changes to it at the given interval on a background thread.
+     */
+    public synchronized RecorderPolicyFile watching(long period, TimeUnit timeUnit) {
+        this.reload();
+        if(this.watcher == null) {
+            this.watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "recorder-policy-file-" + this.path.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.watcher.scheduleWithFixedDelay(this::reload, period, period, timeUnit);
+        }
+        return this;
+    }
+
+    /**
+     * Load the file if it has changed since it was last loaded, and apply it to every attached recorder.
+     * @return True if new policies were applied.
+     */
+    public synchronized boolean reload() {
+        try {
+            FileTime modified = Files.getLastModifiedTime(this.path);
+            byte[] contents = Files.readAllBytes(this.path);
+            CRC32 checksum = new CRC32();
+            checksum.update(contents);
+            if(modified.equals(this.lastModified) && contents.length == this.lastSize &&
+                    checksum.getValue() == this.lastChecksum) {
+                return false;
+            }
+            Properties properties = new Properties();
+            try(Reader reader = new InputStreamReader(new ByteArrayInputStream(contents), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            Map<InvocationRecorder, RecorderPolicy> policies = new HashMap<>();
+            for(Map.Entry<InvocationRecorder, RecorderPolicy> entry : this.basePolicies.entrySet()) {
+                policies.put(entry.getKey(), parse(properties, entry.getValue(), this.filters));
+            }
+            // Nothing is applied unless every policy parsed.
+            policies.forEach((recorder, policy) -> recorder.updatingPolicy(current -> policy));
+            this.properties = properties;
+            this.lastModified = modified;
+            this.lastSize = contents.length;
+            this.lastChecksum = checksum.getValue();
+            log.info(String.format("Applied recorder policies from %s to %d recorders.", this.path, policies.size()));
+            return true;
+        } catch(NoSuchFileException e) {
+            log.warn(String.format("Recorder policy file %s doesn't exist. Keeping the current policies.", this.path));
+        } catch(IOException | RuntimeException e) {
+            log.error(String.format("While loading recorder policies from %s. Keeping the current ones.", this.path), e);
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void close() {
+        if(this.watcher != null) {
+            this.watcher.shutdownNow();
+            this.watcher = null;
+        }
+    }
+
+    static RecorderPolicy parse(Properties properties, RecorderPolicy base, Map<String, ObjectFilter> filters) {
+        RecorderPolicy.RecorderPolicyBuilder builder = base.toBuilder();
+        Map<String, RecorderPolicy.MethodPolicy.MethodPolicyBuilder> methods = new HashMap<>();
+        for(String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            if(key.startsWith(METHODS) && key.lastIndexOf('.') > METHODS.length()) {
+                String method = key.substring(METHODS.length(), key.lastIndexOf('.'));
+                RecorderPolicy.MethodPolicy.MethodPolicyBuilder override = methods.computeIfAbsent(method, m -> {
+                    RecorderPolicy.MethodPolicy existing = base.getMethods().get(m);
+                    return (existing != null)? existing.toBuilder() : RecorderPolicy.MethodPolicy.builder();
+                });
+                switch(key.substring(key.lastIndexOf('.') + 1)) {
+                    case "enabled": override.enabled(Boolean.parseBoolean(value)); break;
+                    case "throttle": override.throttle(throttle(value)); break;
+                    case "filter": override.objectFilter(filter(value, filters)); break;
+                    default: throw new IllegalArgumentException("Unknown recorder policy setting: " + key);
+                }
+            } else {
+                switch(key) {
+                    case "enabled": builder.enabled(Boolean.parseBoolean(value)); break;
+                    case "throttle": builder.throttle(throttle(value)); break;
+                    case "filter": builder.objectFilter(filter(value, filters)); break;
+                    default: throw new IllegalArgumentException("Unknown recorder policy setting: " + key);
+                }
+            }
+        }
+        methods.forEach((name, override) -> builder.method(name, override.build()));
+        return builder.build();
+    }
+
+    private static ObjectFilter filter(String name, Map<String, ObjectFilter> filters) {
+        ObjectFilter filter = filters.get(name);
+        if(filter == null) {
+            throw new IllegalArgumentException("No filter was registered under the name " + name);
+        }
+        return filter;
+    }
+
+    /**
+     * @return The throttle the given description stands for, or null for none.
+     */
+    static Throttle throttle(String description) {
+        String[] words = description.trim().split("\\s+");
+        try {
+            switch(words[0].toLowerCase()) {
+                case "none":
+                    return null;
+                case "percent":
+                    return new Percentage(Double.parseDouble(words[1]));
+                case "contexts":
+                    return new ContextPercentage(Double.parseDouble(words[1]));
+                case "overhead":
+                    return new OverheadBudget(Double.parseDouble(words[1]));
+                case "rate":
+                    return new Rate(Integer.parseInt(words[1])).per(duration(words), unit(words));
+                case "window":
+                    return new SlidingWindow(Integer.parseInt(words[1])).per(duration(words), unit(words));
+                case "novel":
+                    return new Novelty(Integer.parseInt(words[1])).per(duration(words), unit(words));
+                default:
+                    break;
+            }
+        } catch(ArrayIndexOutOfBoundsException e) {
+            // Falls through to the error below.
+        }
+        throw new IllegalArgumentException("Not a throttle: " + description);
+    }
+
+    private static long duration(String[] words) {
+        if(!"per".equalsIgnoreCase(words[2])) {
+            throw new IllegalArgumentException("Expected 'per' but found " + words[2]);
+        }
+        return Long.parseLong(words[3]);
+    }
+
+    private static TimeUnit unit(String[] words) {
+        return TimeUnit.valueOf(words[4].toUpperCase());
+    }
+}
@@ -0,0 +1,276 @@
+package io.shadowstack.incumbents;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue with any number of producers and a single consumer, over arrays allocated up front. Each slot
+ * carries a sequence number saying whose turn it is: a producer claims the next position with a compare-and-set
+ * on the tail once the slot there has been emptied, writes its item and then the slot's sequence; the consumer
+ * takes items in order once their sequences show them written. Producers never wait on the consumer or on each
+ * other (a failed compare-and-set means another producer got the slot, and they simply try the next one) and
+ * never allocate: when the queue is full, the item is dropped and counted. Items are handed on by a few drainer
+ * threads shared by every queue, which only run while a queue has items its subscriber has asked for; a producer
+ * wakes its queue's drain only when none is already under way, or waiting for the subscriber to ask for more.
+ */
+@Slf4j
+public class RingBuffer<T> {
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final int DRAIN_BATCH = 256; // items handed on before letting other queues have a turn
+    private static final AtomicInteger DRAINER_IDS = new AtomicInteger();
+    private static final ThreadPoolExecutor DRAINERS = drainers(Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private final Executor drainers;
+    private final int mask;
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long head = 0L;
+    private volatile Drain drain = null;
+    private volatile boolean closed = false;
+
+    /**
+     * @param capacity How many items may wait in the queue, rounded up to a power of two.
+     */
+    public RingBuffer(int capacity) {
+        this(capacity, DRAINERS);
+    }
+
+    /**
+     * @param capacity How many items may wait in the queue, rounded up to a power of two.
+     * @param drainers Where to run the queue's drain.
+     */
+    RingBuffer(int capacity, Executor drainers) {
+        this.drainers = drainers;
+        int size = (capacity <= 1)? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.items = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for(int i = 0; i < size; ++i) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add the given item to the queue unless it's full.
+     * @return False if the item was dropped.
+     */
+    public boolean offer(T item) {
+        if(this.closed) {
+            this.dropped.incrementAndGet();
+            return false;
+        }
+        long position = this.tail.get();
+        while(true) {
+            int index = (int) position & this.mask;
+            long lag = this.sequences.get(index) - position;
+            if(lag == 0L) {
+                if(this.tail.compareAndSet(position, position + 1L)) {
+                    this.items.lazySet(index, item);
+                    this.sequences.set(index, position + 1L);
+                    break;
+                }
+                position = this.tail.get();
+            } else if(lag < 0L) {
+                this.dropped.incrementAndGet(); // the slot still holds an item from a lap ago
+                return false;
+            } else {
+                position = this.tail.get(); // another producer took this position
+            }
+        }
+        Drain drain = this.drain;
+        if(drain != null && drain.idle()) {
+            drain.signal();
+        }
+        return true;
+    }
+
+    /**
+     * Take the oldest item from the queue. Must only be called from one thread at a time.
+     * @return The item, or null if there's none.
+     */
+    public T poll() {
+        long position = this.head;
+        int index = (int) position & this.mask;
+        if(this.sequences.get(index) != position + 1L) {
+            return null;
+        }
+        T item = this.items.get(index);
+        this.items.lazySet(index, null);
+        this.sequences.lazySet(index, position + this.mask + 1L);
+        this.head = position + 1L;
+        return item;
+    }
+
+    /**
+     * @return True if the oldest item in the queue is ready to be taken.
+     */
+    private boolean ready() {
+        long position = this.head;
+        return this.sequences.get((int) position & this.mask) == position + 1L;
+    }
+
+    /**
+     * @return A flux of the items in this queue, taken by the shared drainer threads as they're requested. Until
+     * then they wait in the queue. The flux completes once the queue is closed and emptied.
+     */
+    public Flux<T> flux() {
+        return Flux.create(this::drain, FluxSink.OverflowStrategy.ERROR);
+    }
+
+    /**
+     * Take no more items, and complete the flux once those already in the queue have been taken. The queue is also
+     * closed once its subscriber cancels.
+     */
+    public void close() {
+        this.closed = true;
+        Drain drain = this.drain;
+        if(drain != null) {
+            drain.wake();
+        }
+    }
+
+    private void drain(FluxSink<T> emitter) {
+        Drain drain = new Drain(emitter);
+        this.drain = drain;
+        emitter.onRequest(n -> drain.wake());
+        emitter.onDispose(drain::wake);
+        drain.signal();
+    }
+
+    private static ThreadPoolExecutor drainers(int threads) {
+        ThreadPoolExecutor drainers = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "ring-buffer-drainer-" + DRAINER_IDS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainers.allowCoreThreadTimeOut(true);
+        return drainers;
+    }
+
+    /**
+     * Hands items on to one subscriber. Any thread with news for it (an item, a request, a cancellation) signals
+     * it, and whichever signal finds it idle schedules it on a drainer; signals arriving while it runs are counted,
+     * so it runs again rather than missing them, and it's never run on two threads at once. While the subscriber
+     * asks for nothing it parks still signalled, so producers leave it be, until a request, cancellation or close
+     * wakes it.
+     */
+    private class Drain implements Runnable {
+        private final FluxSink<T> emitter;
+        private final AtomicInteger signals = new AtomicInteger();
+        private final AtomicBoolean parked = new AtomicBoolean();
+
+        private Drain(FluxSink<T> emitter) {
+            this.emitter = emitter;
+        }
+
+        private boolean idle() {
+            return this.signals.get() == 0;
+        }
+
+        private void signal() {
+            if(this.signals.getAndIncrement() == 0) {
+                RingBuffer.this.drainers.execute(this);
+            }
+        }
+
+        private void wake() {
+            if(this.parked.compareAndSet(true, false)) {
+                RingBuffer.this.drainers.execute(this);
+            } else {
+                this.signal();
+            }
+        }
+
+        /**
+         * @return True if there's something for a parked drain to do.
+         */
+        private boolean woken() {
+            return this.emitter.isCancelled() || this.emitter.requestedFromDownstream() > 0L ||
+                   (RingBuffer.this.closed && RingBuffer.this.getDepth() == 0);
+        }
+
+        @Override
+        public void run() {
+            int missed = this.signals.get();
+            while(true) {
+                if(this.emitter.isCancelled()) {
+                    // Nothing will take from the queue any more: let go of what's in it, and drop what's added later
+                    RingBuffer.this.closed = true;
+                    RingBuffer.this.drain = null;
+                    while(RingBuffer.this.poll() != null) { }
+                    return;
+                }
+                int emitted = 0;
+                T item;
+                while(emitted < DRAIN_BATCH && this.emitter.requestedFromDownstream() > 0L &&
+                        (item = RingBuffer.this.poll()) != null) {
+                    this.emitter.next(item);
+                    ++emitted;
+                }
+                if(RingBuffer.this.closed && RingBuffer.this.getDepth() == 0) {
+                    RingBuffer.this.drain = null;
+                    this.emitter.complete();
+                    return;
+                }
+                if(emitted == DRAIN_BATCH) {
+                    RingBuffer.this.drainers.execute(this); // still signalled, so this stays the only run
+                    return;
+                }
+                if(this.emitter.requestedFromDownstream() == 0L) {
+                    this.parked.set(true);
+                    // Look again, in case what would have woken it came before it was parked
+                    if(!this.woken() || !this.parked.compareAndSet(true, false)) {
+                        return;
+                    }
+                    continue;
+                }
+                missed = this.signals.addAndGet(-missed);
+                if(missed == 0) {
+                    // A producer that saw this running didn't signal, so look again for what it added
+                    if(!RingBuffer.this.ready() || this.signals.getAndIncrement() != 0) {
+                        return;
+                    }
+                    missed = 1;
+                }
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * @return How many items have been added to this queue so far.
+     */
+    public long getPublished() {
+        return this.tail.get();
+    }
+
+    /**
+     * @return How many items were dropped so far because this queue was full or closed.
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * @return How many items are waiting in this queue.
+     */
+    public int getDepth() {
+        return (int) Math.max(0L, this.tail.get() - this.head);
+    }
+}
@@ -0,0 +1,29 @@
+package io.shadowstack.invocations;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+
+@AllArgsConstructor
+class CanonicalKeyHasher implements KeyHasher {
+    private final KeyHasher hasher;
+
+    @Override
+    public String getAlgorithm() {
+        return this.hasher.getAlgorithm() + "/canonical";
+    }
+
+    @Override
+    public Stream newStream() {
+        return this.hasher.newStream();
+    }
+
+    @Override
+    public ObjectMapper getMapper() {
+        return KeyMappers.CANONICAL;
+    }
+
+    @Override
+    public KeyHasher canonical() {
+        return this;
+    }
+}
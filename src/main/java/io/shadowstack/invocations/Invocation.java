@@ -39,20 +39,33 @@ public class Invocation {
      */
     private final Throwable exceptionThrown;
     private final Duration callDuration;
+    /**
+     * Set when an argument or the result was too large to capture within the recorder's
+     * budget, in which case it was recorded as null.
+     */
+    private final boolean truncated;
 
     public Invocation(Method invokedMethod, InvocationContext invocationContext, Object[] referenceArguments,
                       Object referenceResult, Object[] evaluatedArguments, Object evaluatedResult,
-                      Throwable exceptionThrown, Duration callDuration)
+                      Throwable exceptionThrown, Duration callDuration, boolean truncated)
     {
         this(new InvocationKey(invokedMethod, evaluatedArguments), invocationContext, referenceArguments,
-             referenceResult, evaluatedArguments, evaluatedResult, exceptionThrown, callDuration);
+             referenceResult, evaluatedArguments, evaluatedResult, exceptionThrown, callDuration, truncated);
+    }
+
+    public Invocation(Method invokedMethod, InvocationContext invocationContext, Object[] referenceArguments,
+                      Object referenceResult, Object[] evaluatedArguments, Object evaluatedResult,
+                      Throwable exceptionThrown, Duration callDuration)
+    {
+        this(invokedMethod, invocationContext, referenceArguments, referenceResult, evaluatedArguments,
+             evaluatedResult, exceptionThrown, callDuration, false);
     }
 
     public Invocation(Method invokedMethod, InvocationContext invocationContext, Object[] referenceArguments,
                       Object referenceResult, Object[] evaluatedArguments, Object evaluatedResult)
     {
         this(new InvocationKey(invokedMethod, evaluatedArguments), invocationContext, referenceArguments,
-                referenceResult, evaluatedArguments, evaluatedResult, null, null);
+                referenceResult, evaluatedArguments, evaluatedResult, null, null, false);
     }
 
     @JsonIgnore
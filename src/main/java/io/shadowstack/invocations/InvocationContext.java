@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.ToString;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Data
 @ToString
@@ -25,7 +26,7 @@ public class InvocationContext implements AutoCloseable {
 
     public InvocationContext() {
         if(CURRENT_INVOCATION_ID.get() == null) { // this is the first context instantiation in the call chain
-            CURRENT_INVOCATION_ID.set(UUID.randomUUID().toString());
+            CURRENT_INVOCATION_ID.set(randomId());
             this.didSetInvocationId = true;
         }
         else {
@@ -34,6 +35,24 @@ public class InvocationContext implements AutoCloseable {
         this.contextId = CURRENT_INVOCATION_ID.get();
     }
 
+    /**
+     * @return The ID of the call chain the current thread is in, or null outside of one.
+     */
+    public static String currentId() {
+        return CURRENT_INVOCATION_ID.get();
+    }
+
+    /**
+     * A random (version 4) UUID. A root context may be opened for every intercepted call, so this avoids
+     * the shared SecureRandom behind {@link UUID#randomUUID()}; context IDs need to be unique, not unguessable.
+     */
+    private static String randomId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSigBits = (random.nextLong() & ~(0xC000000000000000L)) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+
     @Override
     public void close() throws Exception {
         if(this.didSetInvocationId) {
@@ -1,15 +1,15 @@
 package io.shadowstack.invocations;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.digest.DigestUtils;
 
+import java.io.IOException;
 import java.lang.reflect.Method;
 
 /**
@@ -23,15 +23,35 @@ import java.lang.reflect.Method;
 @NoArgsConstructor
 @AllArgsConstructor
 public class InvocationKey {
-    private final static ObjectMapper MAPPER = new ObjectMapper();
     private String targetMethodName;
     private String targetClassName;
     private String invocationHash;
+    /**
+     * Which {@link KeyHasher} produced the hash. Keys recorded before this was tracked were all SHA-256.
+     */
+    private String hashAlgorithm = KeyHasher.SHA_256.getAlgorithm();
 
     public InvocationKey(Method invokedMethod, Object[] evaluatedArguments) {
-        this.targetMethodName = invokedMethod.getName();
-        this.targetClassName = invokedMethod.getDeclaringClass().getCanonicalName();
-        this.invocationHash = generateHash(this.targetMethodName, this.targetClassName, evaluatedArguments);
+        this(invokedMethod, evaluatedArguments, KeyHasher.SHA_256);
+    }
+
+    public InvocationKey(Method invokedMethod, Object[] evaluatedArguments, KeyHasher hasher) {
+        this(invokedMethod, evaluatedArguments, hasher, null);
+    }
+
+    /**
+     * @param cache Where to look up arguments that were serialized for earlier keys, or null to serialize them all.
+     */
+    public InvocationKey(Method invokedMethod, Object[] evaluatedArguments, KeyHasher hasher, KeyFragmentCache cache) {
+        this(MethodDescriptor.of(invokedMethod), evaluatedArguments, hasher, cache);
+    }
+
+    public InvocationKey(MethodDescriptor invokedMethod, Object[] evaluatedArguments, KeyHasher hasher,
+                         KeyFragmentCache cache) {
+        this.targetMethodName = invokedMethod.getMethodName();
+        this.targetClassName = invokedMethod.getClassName();
+        this.hashAlgorithm = hasher.getAlgorithm();
+        this.invocationHash = generateHash(hasher, cache, invokedMethod, evaluatedArguments);
     }
 
     @JsonIgnore
@@ -41,22 +61,44 @@ public class InvocationKey {
     }
 
     /**
-     * Generate a unique key from the SHA256 hash of all invocation key fields.
+     * Generate a unique key from the hash of all invocation key fields. Arguments are serialized straight
+     * into the hasher, so hashing takes the same small amount of memory however large they are. One generator
+     * writes the whole key, and strings, numbers and the like are written to it directly rather than each
+     * through the mapper.
      */
-    private static String generateHash(String targetMethodName, String targetClassName, Object[] evaluatedArguments) {
-        StringBuilder builder = new StringBuilder();
-        builder.append(targetClassName);
-        builder.append(',');
-        builder.append(targetMethodName);
+    private static String generateHash(KeyHasher hasher, KeyFragmentCache cache, MethodDescriptor method,
+                                       Object[] evaluatedArguments) {
+        KeyHasher.Stream out = hasher.newStream();
+        ObjectMapper mapper = hasher.getMapper();
+        JsonGenerator generator;
+        try {
+            out.write(method.getKeyPrefix());
+            generator = mapper.getFactory().createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        } catch (IOException e) {
+            String message = "While hashing %s.%s. Returned hash will be null.";
+            log.error(String.format(message, method.getClassName(), method.getMethodName()), e);
+            return null;
+        }
+        generator.setRootValueSeparator(null);
         for(Object obj : evaluatedArguments) {
             try {
-                builder.append(',');
-                builder.append(MAPPER.writeValueAsString(obj));
-            } catch (JsonProcessingException e) {
+                generator.writeRaw(',');
+                if(cache != null && cache.isCacheable(obj)) {
+                    generator.writeRaw(cache.serialize(mapper, obj));
+                } else if(!KeyMappers.writeScalar(mapper, generator, obj)) {
+                    mapper.writeValue(generator, obj);
+                }
+            } catch (IOException e) {
                 log.error(String.format("While serializing %s. Returned hash will be null.", obj), e);
                 return null;
             }
         }
-        return DigestUtils.sha256Hex(builder.toString());
+        try {
+            generator.close(); // flushes, and returns its buffer for the next key
+        } catch (IOException e) {
+            log.error("While closing a key generator. Returned hash will be null.", e);
+            return null;
+        }
+        return out.encode();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,75 @@
+package io.shadowstack.invocations;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.shadowstack.filters.ImmutableTypes;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the serialized form of argument values that invocation keys are built from, so that values passed
+ * over and over (tenant IDs, configuration objects and the like) aren't serialized again for every call. Only
+ * values of immutable types are remembered, since only they are certain to serialize the same way next time;
+ * see {@link ImmutableTypes}. Booleans, characters and boxed numbers are left out: they're written faster than
+ * they'd be looked up. Lookups take no locks. Once the cache holds more than the given number of serialized
+ * bytes it's emptied and fills up again from the values still in use. It can be shared between recorders and
+ * replayers.
+ */
+public class KeyFragmentCache {
+    private static final long ENTRY_OVERHEAD = 64L; // rough size of the entry, key and array headers
+    private static final ClassValue<Boolean> TRIVIAL = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> cls) {
+            return cls == Boolean.class || cls == Character.class ||
+                   (Number.class.isAssignableFrom(cls) && cls.getName().startsWith("java.lang."));
+        }
+    };
+    private final Map<ObjectMapper, Map<Object, SerializableString>> fragments = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final long maxBytes;
+
+    public KeyFragmentCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return True if the given argument's serialized form may be taken from this cache.
+     */
+    boolean isCacheable(Object argument) {
+        return argument != null && !TRIVIAL.get(argument.getClass()) && ImmutableTypes.isImmutable(argument.getClass());
+    }
+
+    /**
+     * @return The given argument as serialized by the given mapper, from this cache if it's there, to be written
+     * raw into a generator.
+     */
+    SerializableString serialize(ObjectMapper mapper, Object argument) throws JsonProcessingException {
+        Map<Object, SerializableString> fragments = this.fragments.get(mapper); // mappers are compared by identity
+        if(fragments == null) {
+            this.fragments.putIfAbsent(mapper, new ConcurrentHashMap<>());
+            fragments = this.fragments.get(mapper);
+        }
+        SerializableString serialized = fragments.get(argument);
+        if(serialized != null) return serialized;
+        serialized = new SerializedString(mapper.writeValueAsString(argument));
+        long size = serialized.asUnquotedUTF8().length + ENTRY_OVERHEAD; // also keeps the encoded bytes
+        if(size <= this.maxBytes / 16 && // a few huge values shouldn't flush out everything else
+                fragments.putIfAbsent(argument, serialized) == null &&
+                this.bytes.addAndGet(size) > this.maxBytes) {
+            this.bytes.set(0L);
+            this.fragments.clear();
+        }
+        return serialized;
+    }
+
+    /**
+     * @return The estimated number of bytes held by this cache.
+     */
+    public long size() {
+        return this.bytes.get();
+    }
+}
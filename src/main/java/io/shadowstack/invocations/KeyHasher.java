@@ -0,0 +1,53 @@
+package io.shadowstack.invocations;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.OutputStream;
+
+/**
+ * Hashes the serialized fields of an invocation key. Keys record the algorithm that produced them, so recorders
+ * and replayers must agree on a hasher for their keys to match.
+ */
+public interface KeyHasher {
+    /**
+     * The default, producing hex-encoded SHA-256 hashes.
+     */
+    KeyHasher SHA_256 = new Sha256KeyHasher();
+    /**
+     * A much faster non-cryptographic hash, producing 128-bit Murmur3 hashes encoded as 22 characters of
+     * unpadded URL-safe base64. Suitable only while keys are never exposed to untrusted callers.
+     */
+    KeyHasher MURMUR3_128 = new Murmur3KeyHasher();
+
+    /**
+     * @return The name recorded in each key produced by this hasher.
+     */
+    String getAlgorithm();
+
+    /**
+     * @return A new stream to write the bytes to be hashed into.
+     */
+    Stream newStream();
+
+    /**
+     * @return The mapper that serializes key fields to be hashed.
+     */
+    default ObjectMapper getMapper() {
+        return KeyMappers.STANDARD;
+    }
+
+    /**
+     * @return This hasher over a canonical serialization, in which equal arguments always hash equally whatever
+     * order their maps, sets and properties happen to iterate in. Its keys never match this hasher's own.
+     */
+    default KeyHasher canonical() {
+        return new CanonicalKeyHasher(this);
+    }
+
+    abstract class Stream extends OutputStream {
+        /**
+         * @return The encoded hash of everything written so far.
+         */
+        public abstract String encode();
+    }
+}
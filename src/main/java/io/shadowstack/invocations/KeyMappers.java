@@ -0,0 +1,186 @@
+package io.shadowstack.invocations;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.*;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.std.StdDelegatingSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.type.CollectionType;
+import com.fasterxml.jackson.databind.type.MapType;
+import com.fasterxml.jackson.databind.util.StdConverter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * The object mappers used to serialize invocation keys for hashing.
+ */
+final class KeyMappers {
+    /**
+     * Serializes as Jackson does by default, so map entries, set elements and properties come out in whatever
+     * order the JVM happens to iterate them.
+     */
+    static final ObjectMapper STANDARD = new ObjectMapper();
+    /**
+     * Serializes equal values identically: properties and map entries are sorted by name, set elements are sorted,
+     * and numbers are written in one normal form (no trailing zeros on decimals and no negative zero).
+     */
+    static final ObjectMapper CANONICAL = canonical();
+
+    private KeyMappers() {}
+
+    /**
+     * Write the given value just as the given mapper would, without going through the mapper, if it's a string,
+     * UUID, boolean, int or long and the mapper is one of these, which serialize those as Jackson does by default.
+     * @return False if the value was left for the mapper to write.
+     */
+    static boolean writeScalar(ObjectMapper mapper, JsonGenerator gen, Object value) throws IOException {
+        if(mapper != STANDARD && mapper != CANONICAL) return false;
+        if(value instanceof String) {
+            gen.writeString((String) value);
+        } else if(value instanceof UUID) {
+            gen.writeString(value.toString());
+        } else if(value instanceof Boolean) {
+            gen.writeBoolean((Boolean) value);
+        } else if(value instanceof Integer) {
+            gen.writeNumber((Integer) value);
+        } else if(value instanceof Long) {
+            gen.writeNumber((Long) value);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static ObjectMapper canonical() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+        mapper.configure(JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN, true);
+        SimpleModule module = new SimpleModule();
+        module.setSerializerModifier(new SortingSerializerModifier(mapper));
+        module.addSerializer(BigDecimal.class, new StdSerializer<BigDecimal>(BigDecimal.class) {
+            @Override
+            public void serialize(BigDecimal value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                gen.writeNumber(value.signum() == 0? BigDecimal.ZERO : value.stripTrailingZeros());
+            }
+        });
+        StdSerializer<Double> doubles = new StdSerializer<Double>(Double.class) {
+            @Override
+            public void serialize(Double value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                gen.writeNumber(value == 0.0D? 0.0D : value);
+            }
+        };
+        StdSerializer<Float> floats = new StdSerializer<Float>(Float.class) {
+            @Override
+            public void serialize(Float value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                gen.writeNumber(value == 0.0F? 0.0F : value);
+            }
+        };
+        module.addSerializer(Double.class, doubles);
+        module.addSerializer(Double.TYPE, doubles);
+        module.addSerializer(Float.class, floats);
+        module.addSerializer(Float.TYPE, floats);
+        module.addSerializer(ObjectNode.class, new StdSerializer<ObjectNode>(ObjectNode.class) {
+            @Override
+            public void serialize(ObjectNode value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                List<String> names = new ArrayList<>();
+                value.fieldNames().forEachRemaining(names::add);
+                Collections.sort(names);
+                gen.writeStartObject();
+                for(String name : names) {
+                    gen.writeFieldName(name);
+                    provider.defaultSerializeValue(value.get(name), gen);
+                }
+                gen.writeEndObject();
+            }
+        });
+        mapper.registerModule(module);
+        return mapper;
+    }
+
+    /**
+     * Puts unordered maps and sets in a canonical order before handing them to the serializer Jackson would have
+     * used anyway. Sorted and enum-keyed ones are left as they are.
+     */
+    private static class SortingSerializerModifier extends BeanSerializerModifier {
+        private final ObjectMapper mapper;
+
+        private SortingSerializerModifier(ObjectMapper mapper) {
+            this.mapper = mapper;
+        }
+
+        @Override
+        public JsonSerializer<?> modifyMapSerializer(SerializationConfig config, MapType valueType,
+                                                     BeanDescription beanDesc, JsonSerializer<?> serializer) {
+            Class<?> cls = valueType.getRawClass();
+            if(SortedMap.class.isAssignableFrom(cls) || EnumMap.class.isAssignableFrom(cls)) return serializer;
+            return new StdDelegatingSerializer(new StdConverter<Object, Object>() {
+                @Override
+                public Object convert(Object map) {
+                    List<Map.Entry<?, ?>> entries = new ArrayList<>(((Map<?, ?>) map).entrySet());
+                    CanonicalOrder order = new CanonicalOrder(mapper);
+                    entries.sort((a, b) -> order.compare(a.getKey(), b.getKey()));
+                    Map<Object, Object> sorted = new LinkedHashMap<>();
+                    entries.forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+                    return sorted;
+                }
+            }, valueType, serializer);
+        }
+
+        @Override
+        public JsonSerializer<?> modifyCollectionSerializer(SerializationConfig config, CollectionType valueType,
+                                                            BeanDescription beanDesc, JsonSerializer<?> serializer) {
+            Class<?> cls = valueType.getRawClass();
+            if(!Set.class.isAssignableFrom(cls) || SortedSet.class.isAssignableFrom(cls) ||
+                    EnumSet.class.isAssignableFrom(cls)) {
+                return serializer;
+            }
+            return new StdDelegatingSerializer(new StdConverter<Object, Object>() {
+                @Override
+                public Object convert(Object set) {
+                    List<Object> sorted = new ArrayList<>((Collection<?>) set);
+                    sorted.sort(new CanonicalOrder(mapper));
+                    return sorted;
+                }
+            }, valueType, serializer);
+        }
+    }
+
+    /**
+     * Orders values first by class name, then naturally if they're comparable, else by their canonical JSON.
+     */
+    private static class CanonicalOrder implements Comparator<Object> {
+        private final ObjectMapper mapper;
+        private final Map<Object, String> serialized = new IdentityHashMap<>();
+
+        private CanonicalOrder(ObjectMapper mapper) {
+            this.mapper = mapper;
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public int compare(Object a, Object b) {
+            if(a == b) return 0;
+            if(a == null) return -1;
+            if(b == null) return 1;
+            if(a.getClass() != b.getClass()) return a.getClass().getName().compareTo(b.getClass().getName());
+            if(a instanceof Comparable) return ((Comparable) a).compareTo(b);
+            return this.json(a).compareTo(this.json(b));
+        }
+
+        private String json(Object obj) {
+            return this.serialized.computeIfAbsent(obj, o -> {
+                try {
+                    return this.mapper.writeValueAsString(o);
+                } catch(JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package io.shadowstack.invocations;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What invocation keys need to know about a method, worked out once per method rather than on every call.
+ */
+@Getter
+public final class MethodDescriptor {
+    private static final Map<Method, MethodDescriptor> DESCRIPTORS = new ConcurrentHashMap<>();
+    private final Method method;
+    private final String methodName;
+    private final String className;
+    /**
+     * The UTF-8 bytes of "className,methodName", which every key for this method's calls is hashed from first.
+     */
+    @Getter(AccessLevel.PACKAGE) private final byte[] keyPrefix;
+
+    private MethodDescriptor(Method method) {
+        this.method = method;
+        this.methodName = method.getName();
+        this.className = method.getDeclaringClass().getCanonicalName();
+        this.keyPrefix = (this.className + "," + this.methodName).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static MethodDescriptor of(Method method) {
+        MethodDescriptor descriptor = DESCRIPTORS.get(method);
+        return (descriptor != null)? descriptor : DESCRIPTORS.computeIfAbsent(method, MethodDescriptor::new);
+    }
+}
@@ -0,0 +1,121 @@
+package io.shadowstack.invocations;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * MurmurHash3 x64 128 with a seed of zero, computed incrementally 16 bytes at a time. It gives the same result
+ * as hashing everything written in one go with {@code MurmurHash3.hash128x64} from commons-codec.
+ */
+class Murmur3KeyHasher implements KeyHasher {
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    @Override
+    public String getAlgorithm() {
+        return "Murmur3-128";
+    }
+
+    @Override
+    public Stream newStream() {
+        return new Murmur3Stream();
+    }
+
+    private static long mixK1(long k1) {
+        return Long.rotateLeft(k1 * C1, 31) * C2;
+    }
+
+    private static long mixK2(long k2) {
+        return Long.rotateLeft(k2 * C2, 33) * C1;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long littleEndianLong(byte[] b, int off) {
+        long value = 0L;
+        for(int i = 7; i >= 0; --i) {
+            value = (value << 8) | (b[off + i] & 0xffL);
+        }
+        return value;
+    }
+
+    private static class Murmur3Stream extends Stream {
+        private final byte[] tail = new byte[16];
+        private int tailLength = 0;
+        private long length = 0L;
+        private long h1 = 0L;
+        private long h2 = 0L;
+
+        @Override
+        public void write(int b) {
+            this.tail[this.tailLength++] = (byte) b;
+            ++this.length;
+            if(this.tailLength == 16) {
+                this.block(this.tail, 0);
+                this.tailLength = 0;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.length += len;
+            if(this.tailLength > 0) {
+                int taken = Math.min(len, 16 - this.tailLength);
+                System.arraycopy(b, off, this.tail, this.tailLength, taken);
+                this.tailLength += taken;
+                off += taken;
+                len -= taken;
+                if(this.tailLength < 16) return;
+                this.block(this.tail, 0);
+                this.tailLength = 0;
+            }
+            for(; len >= 16; off += 16, len -= 16) {
+                this.block(b, off);
+            }
+            System.arraycopy(b, off, this.tail, 0, len);
+            this.tailLength = len;
+        }
+
+        @Override
+        public String encode() {
+            long h1 = this.h1;
+            long h2 = this.h2;
+            long k1 = 0L;
+            long k2 = 0L;
+            for(int i = this.tailLength - 1; i >= 8; --i) {
+                k2 = (k2 << 8) | (this.tail[i] & 0xffL);
+            }
+            for(int i = Math.min(this.tailLength, 8) - 1; i >= 0; --i) {
+                k1 = (k1 << 8) | (this.tail[i] & 0xffL);
+            }
+            if(this.tailLength > 8) h2 ^= mixK2(k2);
+            if(this.tailLength > 0) h1 ^= mixK1(k1);
+            h1 ^= this.length;
+            h2 ^= this.length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+            return ENCODER.encodeToString(ByteBuffer.allocate(16).putLong(h1).putLong(h2).array());
+        }
+
+        private void block(byte[] b, int off) {
+            this.h1 ^= mixK1(littleEndianLong(b, off));
+            this.h1 = Long.rotateLeft(this.h1, 27) + this.h2;
+            this.h1 = this.h1 * 5 + 0x52dce729;
+            this.h2 ^= mixK2(littleEndianLong(b, off + 8));
+            this.h2 = Long.rotateLeft(this.h2, 31) + this.h1;
+            this.h2 = this.h2 * 5 + 0x38495ab5;
+        }
+    }
+}
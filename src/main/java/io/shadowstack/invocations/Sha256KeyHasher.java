@@ -0,0 +1,34 @@
+package io.shadowstack.invocations;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.security.MessageDigest;
+
+class Sha256KeyHasher implements KeyHasher {
+    @Override
+    public String getAlgorithm() {
+        return "SHA-256";
+    }
+
+    @Override
+    public Stream newStream() {
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        return new Stream() {
+            @Override
+            public void write(int b) {
+                digest.update((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                digest.update(b, off, len);
+            }
+
+            @Override
+            public String encode() {
+                return Hex.encodeHexString(digest.digest());
+            }
+        };
+    }
+}
@@ -0,0 +1,36 @@
+package io.shadowstack.invocations.destinations;
+
+import io.shadowstack.invocations.Invocation;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A destination that sends without tying up the calling thread while it waits for the response. Sinks start
+ * sends to these on their own threads and don't hand them to sender threads as they do other destinations.
+ */
+public interface AsyncInvocationDestination extends InvocationDestination {
+    /**
+     * Start sending invocation instances to this destination.
+     * @param invocations Invocations sent
+     * @return Completed with the invocations saved (may be altered, e.g. with updated hashes), or exceptionally
+     * if they couldn't be sent.
+     */
+    CompletableFuture<List<Invocation>> sendAsync(List<Invocation> invocations);
+
+    /**
+     * Send and wait for the response.
+     */
+    @Override
+    default List<Invocation> send(List<Invocation> invocations) {
+        try {
+            return this.sendAsync(invocations).join();
+        } catch(CompletionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package io.shadowstack.invocations.destinations;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.shadowstack.HttpTransport;
+import io.shadowstack.invocations.Invocation;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Destination which is an asynchronous REST API client for the recording endpoints on an oracle service. Requests
+ * are queued with the transport's dispatcher and completed from its callbacks, so the caller never waits for a
+ * response, and as many batches as the dispatcher allows may be on their way at once over pooled connections.
+ * Invocations are encoded and decoded just as the Feign clients for the same endpoints do, so either may be used
+ * with the same oracle.
+ */
+public class AsyncRestInvocationDestination implements AsyncInvocationDestination {
+    private static final MediaType JSON = MediaType.get("application/json");
+    private static final ObjectMapper ENCODER = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private static final ObjectMapper DECODER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final TypeReference<List<Invocation>> INVOCATIONS = new TypeReference<List<Invocation>>() {};
+    private final OkHttpClient client;
+    private final String url;
+
+    /**
+     * @param host The host name of the oracle, including the protocol and port, e.g. "http://localhost:8080".
+     * @param path The endpoint to post invocations to, e.g. "/record/shadowing".
+     */
+    public AsyncRestInvocationDestination(OkHttpClient client, String host, String path) {
+        this.client = client;
+        this.url = host + path;
+    }
+
+    /**
+     * @return A destination that forwards to the oracle's "shadowing" endpoint, like
+     * {@link ShadowingRestInvocationDestination}, over the shared {@link HttpTransport}.
+     */
+    public static AsyncRestInvocationDestination shadowing(String host) {
+        HttpTransport transport = HttpTransport.shared();
+        return new AsyncRestInvocationDestination(transport.client(transport.getTimeouts()), host, "/record/shadowing");
+    }
+
+    /**
+     * @return A destination that forwards to the oracle's "replaying" endpoint, like
+     * {@link ReplayingRestInvocationDestination}, over the shared {@link HttpTransport}.
+     */
+    public static AsyncRestInvocationDestination replaying(String host) {
+        HttpTransport transport = HttpTransport.shared();
+        return new AsyncRestInvocationDestination(transport.client(transport.getTimeouts()), host, "/record/replaying");
+    }
+
+    @Override
+    public CompletableFuture<List<Invocation>> sendAsync(List<Invocation> invocations) {
+        CompletableFuture<List<Invocation>> future = new CompletableFuture<>();
+        Request request;
+        try {
+            request = new Request.Builder()
+                    .url(this.url)
+                    .post(RequestBody.create(JSON, ENCODER.writeValueAsBytes(invocations)))
+                    .build();
+        } catch(IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        this.client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try(ResponseBody body = response.body()) {
+                    if(!response.isSuccessful()) {
+                        String message = "%s responded with status %d.";
+                        throw new IOException(String.format(message, AsyncRestInvocationDestination.this.url, response.code()));
+                    }
+                    byte[] bytes = (body != null)? body.bytes() : new byte[0];
+                    future.complete((bytes.length > 0)? DECODER.readValue(bytes, INVOCATIONS) : null);
+                } catch(IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "(" + this.url + ")";
+    }
+}
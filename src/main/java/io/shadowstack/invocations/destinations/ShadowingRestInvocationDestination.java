@@ -6,8 +6,8 @@ import feign.Logger;
 import feign.RequestLine;
 import feign.jackson.JacksonDecoder;
 import feign.jackson.JacksonEncoder;
-import feign.okhttp.OkHttpClient;
 import feign.slf4j.Slf4jLogger;
+import io.shadowstack.HttpTransport;
 import io.shadowstack.invocations.Invocation;
 
 import java.util.List;
@@ -24,12 +24,21 @@ public interface ShadowingRestInvocationDestination extends InvocationDestinatio
     /**
      * Create a new client for the given oracle host, conforming to the InvocationDestination interface, which
      * will forward invocations for shadowing (i.e. they will be both recorded and forwarded to shadowing candidates).
+     * The client shares its connections with the other REST clients, through the shared {@link HttpTransport}.
      * @param host The host name of the oracle, including the protocol and port, e.g. "http://localhost:8080".
      * @return An instance of InvocationDestination that forwards to the oracle's "shadowing" endpoint.
      */
     static InvocationDestination createClient(String host) {
+        return createClient(host, HttpTransport.shared().getTimeouts());
+    }
+
+    /**
+     * Create a new client as above, with the given timeouts.
+     */
+    static InvocationDestination createClient(String host, HttpTransport.Timeouts timeouts) {
         return Feign.builder()
-                .client(new OkHttpClient())
+                .client(HttpTransport.shared().feignClient(timeouts))
+                .options(HttpTransport.feignOptions(timeouts))
                 .encoder(new JacksonEncoder())
                 .decoder(new JacksonDecoder())
                 .logger(new Slf4jLogger(ShadowingRestInvocationDestination.class))
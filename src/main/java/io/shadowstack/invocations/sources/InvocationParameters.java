@@ -14,9 +14,11 @@ import lombok.ToString;
 public class InvocationParameters {
     private String hash;
     private String context;
+    private String hashAlgorithm;
 
     public InvocationParameters(InvocationKey key, InvocationContext ctx) {
         this.hash = key.getInvocationHash();
         this.context = ctx.getContextId();
+        this.hashAlgorithm = key.getHashAlgorithm();
     }
 }
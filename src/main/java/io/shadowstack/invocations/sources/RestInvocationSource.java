@@ -3,8 +3,8 @@ package io.shadowstack.invocations.sources;
 import feign.*;
 import feign.jackson.JacksonDecoder;
 import feign.jackson.JacksonEncoder;
-import feign.okhttp.OkHttpClient;
 import feign.slf4j.Slf4jLogger;
+import io.shadowstack.HttpTransport;
 import io.shadowstack.invocations.Invocation;
 
 /**
@@ -18,12 +18,21 @@ public interface RestInvocationSource extends InvocationSource {
     /**
      * Create a new client for the given oracle host, conforming to the InvocationSource interface, which
      * will retrieve recorded invocations via the oracle's "recording" endpoint.
+     * The client shares its connections with the other REST clients, through the shared {@link HttpTransport}.
      * @param host The host name of the oracle, including the protocol and port, e.g. "http://localhost:8080".
      * @return An instance of InvocationSource that retrieves from the oracle's "recording" endpoint.
      */
     static InvocationSource createClient(String host) {
+        return createClient(host, HttpTransport.shared().getTimeouts());
+    }
+
+    /**
+     * Create a new client as above, with the given timeouts.
+     */
+    static InvocationSource createClient(String host, HttpTransport.Timeouts timeouts) {
         return Feign.builder()
-                .client(new OkHttpClient())
+                .client(HttpTransport.shared().feignClient(timeouts))
+                .options(HttpTransport.feignOptions(timeouts))
                 .encoder(new JacksonEncoder())
                 .decoder(new JacksonDecoder())
                 .logger(new Slf4jLogger(RestInvocationSource.class))
@@ -0,0 +1,71 @@
+package io.shadowstack.throttles;
+
+import io.shadowstack.invocations.InvocationKey;
+
+import java.time.Duration;
+
+/**
+ * Records a call only if every one of the given throttles would, as in "novel, and no more than 10 a second".
+ * The throttles are asked in order and the first to reject a call has the last word, so those after it don't
+ * count it.
+ */
+public class AllOf implements Throttle {
+    private final Throttle[] throttles;
+
+    public AllOf(Throttle... throttles) {
+        this.throttles = throttles.clone();
+    }
+
+    @Override
+    public boolean reject() {
+        for(Throttle throttle : this.throttles) {
+            if(throttle.reject()) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Decision decide(Call call) {
+        Decision[] pending = null;
+        int count = 0;
+        for(Throttle throttle : this.throttles) {
+            Decision decision = throttle.decide(call);
+            if(decision == null) return null;
+            if(decision == Decision.RECORD) continue; // nothing left for it to decide
+            if(pending == null) {
+                pending = new Decision[this.throttles.length];
+            }
+            pending[count++] = decision;
+        }
+        if(count == 0) return Decision.RECORD;
+        return (count == 1)? pending[0] : new Pending(pending, count);
+    }
+
+    /**
+     * The decisions still to be made about a call every throttle let through, in order.
+     */
+    private static class Pending implements Decision {
+        private final Decision[] decisions;
+        private final int count;
+
+        private Pending(Decision[] decisions, int count) {
+            this.decisions = decisions;
+            this.count = count;
+        }
+
+        @Override
+        public boolean reject(InvocationKey key) {
+            for(int i = 0; i < this.count; ++i) {
+                if(this.decisions[i].reject(key)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void recorded(Duration callDuration, Duration captureDuration, double backlog) {
+            for(int i = 0; i < this.count; ++i) {
+                this.decisions[i].recorded(callDuration, captureDuration, backlog);
+            }
+        }
+    }
+}
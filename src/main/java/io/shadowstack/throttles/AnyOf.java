@@ -0,0 +1,77 @@
+package io.shadowstack.throttles;
+
+import io.shadowstack.invocations.InvocationKey;
+
+import java.time.Duration;
+
+/**
+ * Records a call if any of the given throttles would, as in "novel, else 5% of the rest". A throttle only counts
+ * as recording a call if it lets it through before it's captured and keeps it once its key is known, so the
+ * decisions of those that let it through are carried with the call until its key is judged. They're asked about
+ * the key in order, and the first to keep it is the only one to count it.
+ */
+public class AnyOf implements Throttle {
+    private final Throttle[] throttles;
+
+    public AnyOf(Throttle... throttles) {
+        this.throttles = throttles.clone();
+    }
+
+    @Override
+    public boolean reject() {
+        for(Throttle throttle : this.throttles) {
+            if(!throttle.reject()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Decision decide(Call call) {
+        Decision first = null;
+        Decision[] accepted = null;
+        int count = 0;
+        for(Throttle throttle : this.throttles) {
+            Decision decision = throttle.decide(call);
+            if(decision == null) continue;
+            if(count == 0) {
+                first = decision;
+            } else {
+                if(accepted == null) {
+                    accepted = new Decision[this.throttles.length];
+                    accepted[0] = first;
+                }
+                accepted[count] = decision;
+            }
+            ++count;
+        }
+        return (count <= 1)? first : new Accepted(accepted, count);
+    }
+
+    /**
+     * The decisions of the throttles that let a call through, in order.
+     */
+    private static class Accepted implements Decision {
+        private final Decision[] decisions;
+        private final int count;
+
+        private Accepted(Decision[] decisions, int count) {
+            this.decisions = decisions;
+            this.count = count;
+        }
+
+        @Override
+        public boolean reject(InvocationKey key) {
+            for(int i = 0; i < this.count; ++i) {
+                if(!this.decisions[i].reject(key)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void recorded(Duration callDuration, Duration captureDuration, double backlog) {
+            for(int i = 0; i < this.count; ++i) {
+                this.decisions[i].recorded(callDuration, captureDuration, backlog);
+            }
+        }
+    }
+}
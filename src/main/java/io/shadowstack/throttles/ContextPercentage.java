@@ -0,0 +1,46 @@
+package io.shadowstack.throttles;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records a percentage of call chains rather than of calls. Whether a chain is recorded follows from its context
+ * ID alone, so every recorder it passes through makes the same decision and the chain is captured whole or not at
+ * all. Recorders with different percentages nest: a chain recorded at 5% is also recorded by those at 10%.
+ */
+public class ContextPercentage implements Throttle {
+    private final double percentage;
+
+    public ContextPercentage(double percentage) {
+        this.percentage = Percentage.fraction(percentage);
+    }
+
+    /**
+     * Without a context to go by, falls back to sampling calls independently.
+     */
+    @Override
+    public boolean reject() {
+        return ThreadLocalRandom.current().nextDouble() >= this.percentage;
+    }
+
+    @Override
+    public Decision decide(Call call) {
+        String contextId = call.getContext().getContextId();
+        if(contextId == null) {
+            return Throttle.super.decide(call);
+        }
+        return (position(contextId) >= this.percentage)? null : Decision.RECORD;
+    }
+
+    /**
+     * @return Where the given context ID falls, uniformly and the same in every JVM, between 0 inclusive and 1.
+     */
+    static double position(String contextId) {
+        long h = contextId.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+}
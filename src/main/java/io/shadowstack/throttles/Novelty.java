@@ -0,0 +1,212 @@
+package io.shadowstack.throttles;
+
+import io.shadowstack.invocations.InvocationKey;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Accepts at most a given number of recordings per invocation key per window of time, so that calls seen over
+ * and over aren't sent again until the window has moved on. Keys are counted approximately, in a count-min sketch
+ * of fixed size with one generation for the current window and one for the window before it. Each row of the
+ * sketch is indexed by a different combination of two 64-bit halves of the key's own hash (Kirsch and
+ * Mitzenmacher's double hashing), so rows are as independent as the hash is wide. The count for a key
+ * is its count in the current window plus the part of its count in the previous window that still falls within a
+ * window's length of now. Counts may come out too high, but never too low, so the limit holds except for the odd
+ * race between threads recording the same key at the same moment.
+ */
+@Slf4j
+public class Novelty implements Throttle {
+    private static final int DEPTH = 4;
+    private final int acceptsPerKey;
+    private int width = 8192;
+    private long windowNanos = 0L;
+    private AtomicReference<Generations> generations = null;
+    private final Decision byKey = this::reject;
+
+    public Novelty(int acceptsPerKey) {
+        this.acceptsPerKey = acceptsPerKey;
+    }
+
+    public Novelty per(long timeDuration, TimeUnit timeUnit) {
+        this.windowNanos = timeUnit.toNanos(timeDuration);
+        this.generations = new AtomicReference<>(this.newGenerations(System.nanoTime(), null));
+        return this;
+    }
+
+    /**
+     * Size the sketch for roughly the given number of distinct keys per window. More keys than this make it
+     * increasingly likely that a key never seen before is taken for one that has been.
+     */
+    public Novelty tracking(int distinctKeys) {
+        this.width = Integer.highestOneBit(Math.max(distinctKeys, 1) * 8 - 1) << 1;
+        if(this.generations != null) {
+            this.generations.set(this.newGenerations(System.nanoTime(), null));
+        }
+        return this;
+    }
+
+    /**
+     * Novelty can only be judged from the key, so every call is let through to be keyed.
+     */
+    @Override
+    public boolean reject() {
+        return false;
+    }
+
+    /**
+     * Lets every call through, to be judged by its key once it's been captured.
+     */
+    @Override
+    public Decision decide(Call call) {
+        return this.byKey;
+    }
+
+    /**
+     * @return True if the given key has already been accepted as often as allowed, counting it if not.
+     */
+    public boolean reject(InvocationKey key) {
+        if(this.generations == null) {
+            log.warn("No time unit or duration was set for this novelty throttle. Never accepting");
+            return true;
+        }
+        long now = System.nanoTime();
+        Generations current = this.rotate(now);
+        String hash = String.valueOf(key.getInvocationHash());
+        long h1;
+        long h2;
+        if(isHex(hash, 32)) {
+            h1 = bits(hash, 0, 4);
+            h2 = bits(hash, 16, 4);
+        } else if(isBase64Url(hash, 22)) {
+            h1 = bits(hash, 0, 6);
+            h2 = bits(hash, 11, 6);
+        } else { // not a hash we know, so mixed into one
+            h1 = mix(hash.hashCode() ^ ((long) hash.length() << 32));
+            h2 = mix(h1);
+        }
+        int count = current.now.count(h1, h2);
+        double previousShare = 1.0D - (double) (now - current.startNanos) / this.windowNanos;
+        if(current.previous != null && previousShare > 0.0D) {
+            count += (int) Math.ceil(current.previous.count(h1, h2) * previousShare);
+        }
+        if(count >= this.acceptsPerKey) {
+            return true;
+        }
+        current.now.add(h1, h2);
+        return false;
+    }
+
+    private Generations rotate(long now) {
+        while(true) {
+            Generations current = this.generations.get();
+            long elapsed = now - current.startNanos;
+            if(elapsed < this.windowNanos) {
+                return current;
+            }
+            // A sketch more than one whole window old has nothing left to say.
+            Sketch previous = (elapsed < 2 * this.windowNanos)? current.now : null;
+            long start = current.startNanos + (elapsed / this.windowNanos) * this.windowNanos;
+            Generations next = this.newGenerations(start, previous);
+            if(this.generations.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private Generations newGenerations(long startNanos, Sketch previous) {
+        return new Generations(startNanos, new Sketch(this.width), previous);
+    }
+
+    private static boolean isHex(String hash, int minLength) {
+        if(hash.length() < minLength) return false;
+        for(int i = 0; i < hash.length(); ++i) {
+            if(Character.digit(hash.charAt(i), 16) < 0) return false;
+        }
+        return true;
+    }
+
+    private static boolean isBase64Url(String hash, int minLength) {
+        if(hash.length() < minLength) return false;
+        for(int i = 0; i < hash.length(); ++i) {
+            if(base64Url(hash.charAt(i)) < 0) return false;
+        }
+        return true;
+    }
+
+    private static int base64Url(char c) {
+        if(c >= 'A' && c <= 'Z') return c - 'A';
+        if(c >= 'a' && c <= 'z') return c - 'a' + 26;
+        if(c >= '0' && c <= '9') return c - '0' + 52;
+        if(c == '-') return 62;
+        if(c == '_') return 63;
+        return -1;
+    }
+
+    /**
+     * @return The 64 bits of the given hex or base64url hash starting at the given character, as they are.
+     */
+    private static long bits(String hash, int from, int bitsPerChar) {
+        long bits = 0L;
+        for(int i = from; i < Math.min(hash.length(), from + (64 + bitsPerChar - 1) / bitsPerChar); ++i) {
+            char c = hash.charAt(i);
+            bits = (bits << bitsPerChar) | (bitsPerChar == 4? Character.digit(c, 16) : base64Url(c));
+        }
+        return bits;
+    }
+
+    private static long mix(long h) {
+        h *= 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @AllArgsConstructor
+    private static class Generations {
+        private final long startNanos;
+        private final Sketch now;
+        private final Sketch previous;
+    }
+
+    /**
+     * A count-min sketch, updated conservatively: only the rows holding a key's minimum are incremented.
+     */
+    private static class Sketch {
+        private final int mask;
+        private final AtomicIntegerArray counters;
+
+        private Sketch(int width) {
+            this.mask = width - 1;
+            this.counters = new AtomicIntegerArray(DEPTH * width);
+        }
+
+        private int index(long h1, long h2, int row) {
+            return row * (this.mask + 1) + (int) ((h1 + row * (h2 | 1L)) & this.mask);
+        }
+
+        private int count(long h1, long h2) {
+            int min = Integer.MAX_VALUE;
+            for(int row = 0; row < DEPTH; ++row) {
+                min = Math.min(min, this.counters.get(this.index(h1, h2, row)));
+            }
+            return min;
+        }
+
+        private void add(long h1, long h2) {
+            int min = this.count(h1, h2);
+            for(int row = 0; row < DEPTH; ++row) {
+                int index = this.index(h1, h2, row);
+                if(this.counters.get(index) == min) {
+                    this.counters.incrementAndGet(index);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package io.shadowstack.throttles;
+
+import io.shadowstack.invocations.InvocationKey;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Samples each method just often enough to keep the time spent recording it within a given percentage of the time
+ * spent in its calls. The recorder reports what every recorded call took and what capturing it cost, and this
+ * throttle keeps a moving average of both per method. A method whose calls take 1ms and cost 100us to capture is
+ * recorded 20% of the time under a 2% budget; a trivial getter is hardly ever recorded. The sample rate is cut
+ * further once the queue ahead of the sink is more than half full, falling to nearly nothing as it fills up.
+ * Averages are updated without locking, so concurrent reports may occasionally overwrite one another.
+ */
+public class OverheadBudget implements Throttle {
+    private static final double MIN_PROBABILITY = 0.001D; // keeps some samples coming so the averages can recover
+    private static final double SMOOTHING = 0.05D; // weight of each new measurement in the moving averages
+    private final double budget;
+    private final Map<Method, Cost> costs = new ConcurrentHashMap<>();
+    private final Cost unknown = new Cost();
+
+    public OverheadBudget(double percentage) {
+        this.budget = Percentage.fraction(percentage);
+    }
+
+    /**
+     * Without a method to go by, samples at the rate worked out for calls reported without one.
+     */
+    @Override
+    public boolean reject() {
+        return ThreadLocalRandom.current().nextDouble() >= this.unknown.probability;
+    }
+
+    /**
+     * Samples calls at the rate worked out for their method, which learns from what each recorded call cost.
+     */
+    @Override
+    public Decision decide(Call call) {
+        Cost cost = this.costOf(call.getMethod());
+        return (ThreadLocalRandom.current().nextDouble() >= cost.probability)? null : cost;
+    }
+
+    /**
+     * @return The probability with which calls to the given method are currently recorded.
+     */
+    public double probability(Method method) {
+        return this.costOf(method).probability;
+    }
+
+    private Cost costOf(Method method) {
+        if(method == null) return this.unknown;
+        Cost cost = this.costs.get(method);
+        return (cost != null)? cost : this.costs.computeIfAbsent(method, m -> new Cost());
+    }
+
+    /**
+     * The moving averages for one method, and the sample rate they lead to. It's also the decision to record each
+     * sampled call to the method, whatever its key, to be told what the call cost.
+     */
+    private class Cost implements Decision {
+        private volatile double callNanos = -1.0D;
+        private volatile double captureNanos = -1.0D;
+        private volatile double probability = 1.0D;
+
+        @Override
+        public boolean reject(InvocationKey key) {
+            return false;
+        }
+
+        @Override
+        public void recorded(Duration callDuration, Duration captureDuration, double backlog) {
+            this.update(callDuration.toNanos(), captureDuration.toNanos(), backlog, OverheadBudget.this.budget);
+        }
+
+        private void update(long callNanos, long captureNanos, double backlog, double budget) {
+            if(this.callNanos < 0.0D) {
+                this.callNanos = callNanos;
+                this.captureNanos = captureNanos;
+            } else {
+                this.callNanos += SMOOTHING * (callNanos - this.callNanos);
+                this.captureNanos += SMOOTHING * (captureNanos - this.captureNanos);
+            }
+            // Only recorded calls pay for capture, so the overhead per call is the probability times the capture cost.
+            double probability = (this.captureNanos > 0.0D)?
+                    Math.min(1.0D, budget * this.callNanos / this.captureNanos) : 1.0D;
+            if(backlog > 0.5D) {
+                probability *= 2.0D * (1.0D - backlog);
+            }
+            this.probability = Math.max(MIN_PROBABILITY, probability);
+        }
+    }
+}
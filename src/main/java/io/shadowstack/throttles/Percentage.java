@@ -1,23 +1,32 @@
 package io.shadowstack.throttles;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * Records each call independently with the given probability. Each thread draws from its own random number
+ * generator, so concurrent callers never contend.
+ */
 public class Percentage implements Throttle {
     private final double percentage;
-    private final Random random = new Random();
 
     public Percentage(double percentage) {
+        this.percentage = fraction(percentage);
+    }
+
+    /**
+     * @return The given percentage as a fraction, taking values up to 1 to be fractions already.
+     */
+    static double fraction(double percentage) {
         if(percentage <= 1.0D && percentage >= 0.0D) {
-            this.percentage = percentage;
+            return percentage;
         } else if(percentage <= 100.0D && percentage >= 0.0D) {
-            this.percentage = percentage / 100.0D;
-        } else {
-            throw new IllegalArgumentException(String.format("Not a percentage: %f", percentage));
+            return percentage / 100.0D;
         }
+        throw new IllegalArgumentException(String.format("Not a percentage: %f", percentage));
     }
 
     @Override
     public boolean reject() {
-        return this.random.nextDouble() >= this.percentage;
+        return ThreadLocalRandom.current().nextDouble() >= this.percentage;
     }
 }
@@ -2,49 +2,61 @@ package io.shadowstack.throttles;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.time.Instant;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A token bucket holding up to the given number of accepts, refilled evenly over the given duration. It's kept as
+ * the generic cell rate algorithm: the whole bucket is one timestamp, the theoretical arrival time of the next call,
+ * which trails the current time by one refill interval per token held and by at most the duration. Each accept
+ * pushes it one interval later, and a call is refused if that would put it past the current time. A full bucket
+ * may be spent at once, so up to twice the limit can pass within one duration. The interval is kept to at least a
+ * nanosecond, so no rate lets through more than one call per nanosecond.
+ */
 @Slf4j
 public class Rate implements Throttle {
-    private TimeUnit timeUnit;
-    private long timeDuration;
     private final int acceptsPerDuration;
-    private int acceptedThisInterval;
-    private long startEpochMillis;
+    private final long durationNanos;
+    private final long intervalNanos;
+    private final AtomicLong theoreticalArrivalNanos;
 
     public Rate(int acceptsPerDuration) {
+        this(acceptsPerDuration, 0L);
+    }
+
+    private Rate(int acceptsPerDuration, long durationNanos) {
         this.acceptsPerDuration = acceptsPerDuration;
-        this.acceptedThisInterval = 0;
+        this.durationNanos = durationNanos;
+        this.intervalNanos = (acceptsPerDuration > 0)? Math.max(1L, durationNanos / acceptsPerDuration) : 0L;
+        this.theoreticalArrivalNanos = new AtomicLong(System.nanoTime() - durationNanos); // start with a full bucket
     }
 
+    /**
+     * @return A rate of this many accepts per the given duration, starting with a full bucket.
+     */
     public Rate per(long timeDuration, TimeUnit timeUnit) {
-        this.timeUnit = timeUnit;
-        this.timeDuration = timeDuration;
-        this.startEpochMillis = Instant.now().toEpochMilli();
-        return this;
+        return new Rate(this.acceptsPerDuration, timeUnit.toNanos(timeDuration));
     }
 
     @Override
     public boolean reject() {
-        if(this.timeUnit == null) {
+        if(this.durationNanos <= 0L) {
             log.warn("No time unit or duration was set for this rate throttles. Never accepting");
             return true;
         }
-        long endEpochMillis = this.startEpochMillis + this.timeUnit.toMillis(this.timeDuration);
-        if(Instant.now().toEpochMilli() > endEpochMillis) {
-            // TODO: An obvious bug here is that if accept() is called less often than
-            //       the given duration, this end-time will fall behind. All that means
-            //       is that accept will always return true, which for now is close
-            //       enough to what one would expect. A more robust implementation
-            //       might use a buffer of time-stamped transcripts and a timer.
-            this.startEpochMillis = endEpochMillis;
-            this.acceptedThisInterval = 1;
-            return false;
-        } else if(this.acceptedThisInterval < this.acceptsPerDuration) {
-            this.acceptedThisInterval++;
-            return false;
+        if(this.acceptsPerDuration <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        while(true) {
+            long arrival = this.theoreticalArrivalNanos.get();
+            long next = Math.max(arrival, now - this.durationNanos) + this.intervalNanos;
+            if(next - now > 0L) {
+                return true;
+            }
+            if(this.theoreticalArrivalNanos.compareAndSet(arrival, next)) {
+                return false;
+            }
         }
-        return true;
     }
 }
@@ -0,0 +1,82 @@
+package io.shadowstack.throttles;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Accepts at most the given number of calls in any window of the given duration, approximately. Time is cut into
+ * fixed windows which each count the calls they accepted. A call is accepted while the current window's count, plus
+ * the previous window's count weighted by how much of that window still lies within one duration of now, is under
+ * the limit, as if the previous window's calls had been spread evenly across it. Unlike a {@link Rate}, this never
+ * lets much more than the limit through in any one duration. Both counts live in one immutable window, replaced
+ * whole with a compare-and-set.
+ */
+@Slf4j
+public class SlidingWindow implements Throttle {
+    private final int acceptsPerWindow;
+    private final long windowNanos;
+    private final AtomicReference<Window> window;
+
+    public SlidingWindow(int acceptsPerWindow) {
+        this(acceptsPerWindow, 0L);
+    }
+
+    private SlidingWindow(int acceptsPerWindow, long windowNanos) {
+        this.acceptsPerWindow = acceptsPerWindow;
+        this.windowNanos = windowNanos;
+        this.window = new AtomicReference<>(new Window(System.nanoTime(), 0, 0));
+    }
+
+    /**
+     * @return A window of this many accepts per the given duration, with none accepted yet.
+     */
+    public SlidingWindow per(long timeDuration, TimeUnit timeUnit) {
+        return new SlidingWindow(this.acceptsPerWindow, timeUnit.toNanos(timeDuration));
+    }
+
+    @Override
+    public boolean reject() {
+        if(this.windowNanos <= 0L) {
+            log.warn("No time unit or duration was set for this sliding window throttle. Never accepting");
+            return true;
+        }
+        long now = System.nanoTime();
+        while(true) {
+            Window current = this.window.get();
+            Window rolled = current.rollTo(now, this.windowNanos);
+            double previousShare = 1.0D - (double) (now - rolled.startNanos) / this.windowNanos;
+            if(rolled.accepted + rolled.previous * previousShare >= this.acceptsPerWindow) {
+                if(rolled != current) {
+                    this.window.compareAndSet(current, rolled);
+                }
+                return true;
+            }
+            Window next = new Window(rolled.startNanos, rolled.previous, rolled.accepted + 1);
+            if(this.window.compareAndSet(current, next)) {
+                return false;
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Window {
+        private final long startNanos;
+        private final int previous;
+        private final int accepted;
+
+        /**
+         * @return This window if it's still current, else the window that is.
+         */
+        private Window rollTo(long now, long windowNanos) {
+            long elapsed = now - this.startNanos;
+            if(elapsed < windowNanos) {
+                return this;
+            }
+            long start = this.startNanos + (elapsed / windowNanos) * windowNanos;
+            return new Window(start, (elapsed < 2 * windowNanos)? this.accepted : 0, 0);
+        }
+    }
+}
@@ -1,5 +1,93 @@
 package io.shadowstack.throttles;
 
+import io.shadowstack.invocations.InvocationContext;
+import io.shadowstack.invocations.InvocationKey;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+
 public interface Throttle {
+    /**
+     * @return A throttle recording a call if any of the given ones would, asked in order.
+     */
+    static Throttle anyOf(Throttle... throttles) {
+        return new AnyOf(throttles);
+    }
+
+    /**
+     * @return A throttle recording a call only if all of the given ones would, asked in order.
+     */
+    static Throttle allOf(Throttle... throttles) {
+        return new AllOf(throttles);
+    }
+
+    /**
+     * Decide whether to record a call, knowing nothing about it.
+     */
     boolean reject();
+
+    /**
+     * Decide whether to record the given call, before anything about it has been captured. By default, the call
+     * is judged by {@link #reject()} alone.
+     * @return How to finish deciding once the call has been captured, or null not to record it.
+     */
+    default Decision decide(Call call) {
+        return this.reject()? null : Decision.RECORD;
+    }
+
+    /**
+     * A call a throttle is asked about. Its context, which nested calls share with their callers, is only opened
+     * when it's first asked for, so that a call rejected without it costs nothing more.
+     */
+    final class Call implements AutoCloseable {
+        private final Method method;
+        private InvocationContext context = null;
+
+        public Call(Method method) {
+            this.method = method;
+        }
+
+        public Method getMethod() {
+            return this.method;
+        }
+
+        public InvocationContext getContext() {
+            if(this.context == null) {
+                this.context = new InvocationContext();
+            }
+            return this.context;
+        }
+
+        @Override
+        public void close() throws Exception {
+            if(this.context != null) {
+                this.context.close();
+            }
+        }
+    }
+
+    /**
+     * What's left to decide about a call a throttle let through, once it's been captured.
+     */
+    @FunctionalInterface
+    interface Decision {
+        /**
+         * Records every captured call.
+         */
+        Decision RECORD = key -> false;
+
+        /**
+         * Decide whether to keep the captured call after all, now that its key is known. Throttles that only look
+         * at the key let every call through {@link #decide(Call)} and decide here instead.
+         */
+        boolean reject(InvocationKey key);
+
+        /**
+         * Told what the call cost to capture (clone, filter, hash and enqueue) next to what the call itself took,
+         * and what fraction of the sink's queue was in use afterwards, between 0 and 1. Adaptive throttles adjust
+         * to these; the rest ignore them.
+         */
+        default void recorded(Duration callDuration, Duration captureDuration, double backlog) {
+        }
+    }
 }
@@ -1,10 +1,13 @@
 package io.shadowstack;
 
+import io.shadowstack.invocations.Invocation;
+import io.shadowstack.invocations.InvocationKey;
 import net.jodah.concurrentunit.ConcurrentTestCase;
 import org.junit.jupiter.api.BeforeAll;
 
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.concurrent.TimeUnit;
@@ -25,6 +28,21 @@ public class BaseTest extends ConcurrentTestCase {
         baz.getTaskTime().put(TimeUnit.HOURS, Title.Management);
     }
 
+    /**
+     * @return The key of the i-th of a run of distinct invocations of Bar.doSomethingShadowed.
+     */
+    protected static InvocationKey invocationKey(int i) {
+        return new InvocationKey("doSomethingShadowed", "io.shadowstack.Bar", "hash-" + i, "SHA-256");
+    }
+
+    /**
+     * @return The i-th of a run of distinct invocations of Bar.doSomethingShadowed, ready to be sent.
+     */
+    protected static Invocation invocation(int i) {
+        return new Invocation(invocationKey(i), null, new Object[] {"argument"}, "result",
+                new Object[] {"argument"}, "result", null, Duration.ZERO, false);
+    }
+
     protected int findFreePort() {
         try (ServerSocket socket = new ServerSocket(0)) {
             socket.setReuseAddress(true);
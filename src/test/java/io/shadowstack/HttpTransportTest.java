@@ -0,0 +1,246 @@
+package io.shadowstack;
+
+import feign.Feign;
+import feign.Headers;
+import feign.RequestLine;
+import feign.RetryableException;
+import feign.Retryer;
+import feign.jackson.JacksonDecoder;
+import feign.jackson.JacksonEncoder;
+import io.javalin.Javalin;
+import io.shadowstack.candidates.registrars.CandidateRegistrar;
+import io.shadowstack.candidates.registrars.RegistrationRequest;
+import io.shadowstack.candidates.registrars.RestCandidateRegistrar;
+import io.shadowstack.incumbents.InvocationSink;
+import io.shadowstack.invocations.Invocation;
+import io.shadowstack.invocations.destinations.InvocationDestination;
+import io.shadowstack.invocations.destinations.ReplayingRestInvocationDestination;
+import io.shadowstack.invocations.destinations.ShadowingRestInvocationDestination;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+public class HttpTransportTest extends BaseTest {
+    /**
+     * A stand-in for the oracle, keeping the client ports it was called from, i.e. the connections it was called on.
+     */
+    private static Javalin oracle(int port, Set<Integer> connections) {
+        Javalin oracle = Javalin.create().start(port);
+        oracle.post("/record/shadowing", ctx -> {
+            connections.add(ctx.req.getRemotePort());
+            ctx.contentType("application/json").result("[]");
+        });
+        oracle.post("/record/replaying", ctx -> {
+            connections.add(ctx.req.getRemotePort());
+            ctx.contentType("application/json").result("[]");
+        });
+        oracle.post("/candidate/register", ctx -> {
+            connections.add(ctx.req.getRemotePort());
+            ctx.contentType("application/json").result("{\"candidateId\":\"candidate\"}");
+        });
+        return oracle;
+    }
+
+    @Test
+    public void testClientsShareConnections() throws InterruptedException {
+        int port = this.findFreePort();
+        String host = "http://localhost:" + port;
+        Set<Integer> connections = ConcurrentHashMap.newKeySet();
+        Javalin oracle = oracle(port, connections);
+        try {
+            RegistrationRequest request = new RegistrationRequest("io.shadowstack.Bar", "doSomethingShadowed",
+                    Collections.singletonList("io.shadowstack.Foo"), "localhost", 8081);
+
+            // With a client of their own each, every client opens its own connections
+            InvocationDestination shadowing = Feign.builder().client(new feign.okhttp.OkHttpClient())
+                    .encoder(new JacksonEncoder()).decoder(new JacksonDecoder())
+                    .target(ShadowingRestInvocationDestination.class, host);
+            InvocationDestination replaying = Feign.builder().client(new feign.okhttp.OkHttpClient())
+                    .encoder(new JacksonEncoder()).decoder(new JacksonDecoder())
+                    .target(ReplayingRestInvocationDestination.class, host);
+            CandidateRegistrar registrar = Feign.builder().client(new feign.okhttp.OkHttpClient())
+                    .encoder(new JacksonEncoder()).decoder(new JacksonDecoder())
+                    .target(RestCandidateRegistrar.class, host);
+            for(int i = 0; i < 5; ++i) {
+                shadowing.send(Collections.singletonList(invocation(i)));
+                replaying.send(Collections.singletonList(invocation(i)));
+                assertEquals("candidate", registrar.register(request).getCandidateId());
+            }
+            int separate = connections.size();
+            assertTrue(separate >= 3, separate + " connections");
+
+            // Over the shared transport, they take turns on fewer
+            connections.clear();
+            shadowing = ShadowingRestInvocationDestination.createClient(host);
+            replaying = ReplayingRestInvocationDestination.createClient(host);
+            registrar = RestCandidateRegistrar.createClient(host);
+            for(int i = 0; i < 5; ++i) {
+                shadowing.send(Collections.singletonList(invocation(i)));
+                replaying.send(Collections.singletonList(invocation(i)));
+                assertEquals("candidate", registrar.register(request).getCandidateId());
+            }
+            assertTrue(connections.size() < separate, connections.size() + " connections, against " + separate);
+
+            // Each client keeps its own timeouts
+            oracle.post("/record/slow", ctx -> {
+                Thread.sleep(300L);
+                ctx.contentType("application/json").result("[]");
+            });
+            HttpTransport.Timeouts impatient = HttpTransport.Timeouts.builder().read(Duration.ofMillis(100L)).build();
+            SlowDestination slow = Feign.builder()
+                    .client(HttpTransport.shared().feignClient(impatient))
+                    .options(HttpTransport.feignOptions(impatient))
+                    .retryer(Retryer.NEVER_RETRY)
+                    .encoder(new JacksonEncoder()).decoder(new JacksonDecoder())
+                    .target(SlowDestination.class, host);
+            assertThrows(RetryableException.class, () -> slow.send(Collections.singletonList(invocation(0))));
+            SlowDestination patient = Feign.builder()
+                    .client(HttpTransport.shared().feignClient(HttpTransport.Timeouts.DEFAULT))
+                    .options(HttpTransport.feignOptions(HttpTransport.Timeouts.DEFAULT))
+                    .encoder(new JacksonEncoder()).decoder(new JacksonDecoder())
+                    .target(SlowDestination.class, host);
+            assertEquals(Collections.emptyList(), patient.send(Collections.singletonList(invocation(0))));
+        } finally {
+            oracle.stop();
+        }
+    }
+
+    interface SlowDestination extends InvocationDestination {
+        @RequestLine("POST /record/slow")
+        @Headers("Content-Type: application/json")
+        List<Invocation> send(List<Invocation> invocations);
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[4096];
+            for(int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testBatchesAreCompressedOverPooledConnections() throws InterruptedException {
+        int port = this.findFreePort();
+        String host = "http://localhost:" + port;
+        Set<Integer> connections = ConcurrentHashMap.newKeySet();
+        AtomicInteger batches = new AtomicInteger();
+        AtomicLong received = new AtomicLong();
+        AtomicLong decompressed = new AtomicLong();
+        AtomicInteger unexpected = new AtomicInteger();
+        Javalin oracle = Javalin.create().start(port);
+        HttpTransport original = HttpTransport.shared();
+        try {
+            // Bodies are checked here and counted, since a failed assertion in the handler wouldn't fail the test
+            oracle.post("/record/shadowing", ctx -> {
+                connections.add(ctx.req.getRemotePort());
+                byte[] body = ctx.bodyAsBytes();
+                received.addAndGet(body.length);
+                if("gzip".equals(ctx.header("Content-Encoding"))) {
+                    body = gunzip(body);
+                }
+                decompressed.addAndGet(body.length);
+                if(!new String(body, StandardCharsets.UTF_8).contains("\"hash-")) {
+                    unexpected.incrementAndGet();
+                }
+                batches.incrementAndGet();
+                Thread.sleep(20L);
+                ctx.contentType("application/json").result("[]");
+            });
+            HttpTransport.share(HttpTransport.builder().maxIdleConnections(8).gzipRequests(true).build());
+            InvocationDestination shadowing = ShadowingRestInvocationDestination.createClient(host);
+            shadowing.send(Collections.singletonList(invocation(0))); // too small to be compressed
+            AtomicInteger sent = new AtomicInteger();
+            CountDownLatch allSent = new CountDownLatch(1);
+            InvocationSink sink = new InvocationSink(invocations -> {
+                shadowing.send(invocations);
+                if(sent.addAndGet(invocations.size()) == 2000) {
+                    allSent.countDown();
+                }
+                return invocations;
+            }).withBatchSize(50).sendingConcurrently(8);
+            // The range completing flushes whatever's left of the last batch
+            Flux.range(0, 2000).map(BaseTest::invocation).subscribe(sink);
+            assertTrue(allSent.await(10L, TimeUnit.SECONDS), sent.get() + " sent");
+            assertEquals(0, unexpected.get(), "Bodies without the invocations sent");
+            // Full batches but for the last, besides the first uncompressed send
+            assertTrue(batches.get() <= 1 + 2000 / 50 + 1, batches.get() + " batches");
+
+            // Batches of like invocations compress well, so each takes a fraction of the bytes to send, and the
+            // connections they're sent on are kept for the next ones
+            assertTrue(received.get() * 4L < decompressed.get(), received + " of " + decompressed + " bytes sent");
+            assertTrue(connections.size() <= 8, connections.size() + " connections");
+        } finally {
+            HttpTransport.share(original);
+            oracle.stop();
+        }
+    }
+
+    /**
+     * @return How many batches of 50 a second the given destination takes, sent by a sink eight at a time.
+     */
+    private static double batchesPerSecond(InvocationDestination destination, int batches) throws InterruptedException {
+        CountDownLatch allSent = new CountDownLatch(batches);
+        InvocationSink sink = new InvocationSink(invocations -> {
+            destination.send(invocations);
+            allSent.countDown();
+            return invocations;
+        }).withBatchSize(50).sendingConcurrently(8);
+        long start = System.nanoTime();
+        Flux.range(0, batches * 50).map(BaseTest::invocation).subscribe(sink);
+        assertTrue(allSent.await(30L, TimeUnit.SECONDS), allSent.getCount() + " batches unsent");
+        return batches * 1e9D / (System.nanoTime() - start);
+    }
+
+    @Test
+    public void testSharedTransportSendsBatchesFaster() throws InterruptedException {
+        int port = this.findFreePort();
+        String host = "http://localhost:" + port;
+        Set<Integer> connections = ConcurrentHashMap.newKeySet();
+        Javalin oracle = oracle(port, connections);
+        try {
+            // A client made for each call, which can never reuse a connection
+            InvocationDestination perCall = invocations -> Feign.builder().client(new feign.okhttp.OkHttpClient())
+                    .encoder(new JacksonEncoder()).decoder(new JacksonDecoder())
+                    .target(ShadowingRestInvocationDestination.class, host)
+                    .send(invocations);
+            InvocationDestination shared = ShadowingRestInvocationDestination.createClient(host);
+            batchesPerSecond(perCall, 20); // warm up both
+            batchesPerSecond(shared, 20);
+            connections.clear();
+            double perCallRate = batchesPerSecond(perCall, 200);
+            int perCallConnections = connections.size();
+            connections.clear();
+            double sharedRate = batchesPerSecond(shared, 200);
+            String rates = String.format("%.0f batches/s shared against %.0f batches/s per call", sharedRate, perCallRate);
+            log.info(rates);
+            assertTrue(sharedRate > perCallRate, rates);
+            assertTrue(connections.size() < perCallConnections,
+                    connections.size() + " connections, against " + perCallConnections);
+        } finally {
+            oracle.stop();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package io.shadowstack;
+
+import net.sf.cglib.proxy.MethodInterceptor;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProxyFactoryTest extends BaseTest {
+    @Test
+    public void testProxyClassIsGeneratedOnce() {
+        MethodInterceptor first = (obj, method, args, proxy) -> "first";
+        MethodInterceptor second = (obj, method, args, proxy) -> "second";
+        Bar firstProxy = ProxyFactory.create(Bar.class, first);
+        Bar secondProxy = ProxyFactory.create(Bar.class, second);
+        assertNotSame(firstProxy, secondProxy);
+        assertSame(firstProxy.getClass(), secondProxy.getClass());
+        // Each instance keeps its own callback
+        assertEquals("first", firstProxy.doSomethingShadowed(foo));
+        assertEquals("second", secondProxy.doSomethingShadowed(foo));
+    }
+}
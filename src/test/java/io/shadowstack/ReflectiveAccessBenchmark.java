@@ -0,0 +1,111 @@
+package io.shadowstack;
+
+import io.shadowstack.filters.Noise;
+import io.shadowstack.filters.Secret;
+import lombok.AllArgsConstructor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares field access through a fresh Field per visit (what ObjectFilter used to do), a cached method
+ * handle and a cached FieldAccessor, while walking every field of a deep, Foo/Baz-like object graph.
+ * Run with the main method below.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReflectiveAccessBenchmark {
+    private static final int DEPTH = 10;
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    @AllArgsConstructor
+    public static class Node {
+        private String name;
+        @Secret private String password;
+        @Noise private Long timestamp;
+        private double weight;
+        private Node next;
+    }
+
+    private Node root;
+    private Field[] fields;
+    private MethodHandle[] handles;
+    private FieldAccessor[] accessors;
+    private int nextIndex;
+
+    @Setup
+    public void setup() throws IllegalAccessException {
+        for(int i = 0; i < DEPTH; ++i) {
+            this.root = new Node("node" + i, "hunter" + i, (long) i, i * 1.5D, this.root);
+        }
+        this.fields = Node.class.getDeclaredFields();
+        this.handles = new MethodHandle[this.fields.length];
+        this.accessors = new FieldAccessor[this.fields.length];
+        for(int i = 0; i < this.fields.length; ++i) {
+            this.fields[i].setAccessible(true);
+            this.handles[i] = MethodHandles.lookup().unreflectGetter(this.fields[i]).asType(GETTER_TYPE);
+            this.accessors[i] = ReflectiveAccess.accessor(this.fields[i]);
+            if(this.fields[i].getName().equals("next")) {
+                this.nextIndex = i;
+            }
+        }
+    }
+
+    @Benchmark
+    public void uncachedFieldGet(Blackhole blackhole) throws IllegalAccessException {
+        Object node = this.root;
+        while(node != null) {
+            Field next = null;
+            for(Field field : node.getClass().getDeclaredFields()) {
+                field.setAccessible(true);
+                blackhole.consume(field.get(node));
+                if(field.getName().equals("next")) {
+                    next = field;
+                }
+            }
+            node = next.get(node);
+        }
+    }
+
+    @Benchmark
+    public void methodHandleGet(Blackhole blackhole) throws Throwable {
+        Object node = this.root;
+        while(node != null) {
+            for(MethodHandle handle : this.handles) {
+                blackhole.consume((Object) handle.invokeExact(node));
+            }
+            node = (Object) this.handles[this.nextIndex].invokeExact(node);
+        }
+    }
+
+    @Benchmark
+    public void accessorGet(Blackhole blackhole) {
+        Object node = this.root;
+        while(node != null) {
+            for(FieldAccessor accessor : this.accessors) {
+                blackhole.consume(accessor.get(node));
+            }
+            node = this.accessors[this.nextIndex].get(node);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ReflectiveAccessBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
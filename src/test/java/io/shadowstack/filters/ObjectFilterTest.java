@@ -1,16 +1,81 @@
 package io.shadowstack.filters;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.shadowstack.DefaultValue;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
 import org.junit.jupiter.api.Test;
 import io.shadowstack.BaseTest;
 import io.shadowstack.Baz;
 import io.shadowstack.Foo;
+import io.shadowstack.Title;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.shadowstack.Fluently.*;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class ObjectFilterTest extends BaseTest {
+    private static final AtomicInteger PIN_READS = new AtomicInteger();
+
+    @Data
+    @NoArgsConstructor
+    @EqualsAndHashCode(callSuper = true)
+    public static class Manager extends Baz {
+        @Secret
+        private String badge;
+    }
+
+    @Immutable
+    @AllArgsConstructor
+    public static class EmployeeId {
+        private final String value;
+    }
+
+    @AllArgsConstructor
+    public static class TenantId {
+        private final long value;
+    }
+
+    /**
+     * Every field can be reached directly, so a copier is generated for this when the tests are compiled.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Badge {
+        String holder;
+        @Secret
+        String pin;
+        @Noise
+        LocalDateTime issued;
+        Baz baz;
+
+        /**
+         * Counts its calls, which the copier never makes: it reads the field directly, just as reflection does.
+         */
+        public String getPin() {
+            PIN_READS.incrementAndGet();
+            return this.pin;
+        }
+    }
+
+    @Data
+    public static class Loop {
+        private Loop next = this;
+        private String name = "loop";
+    }
+
     @Test
     public void testToObjectDepth() {
         ObjectFilter filter = filter(
@@ -34,4 +99,189 @@ public class ObjectFilterTest extends BaseTest {
         assertEquals(foo.getBaz().getId(), filtered.getBaz().getId());
         assertEquals(foo.getBaz().getHeight(), filtered.getBaz().getHeight());
     }
+
+    @Test
+    public void testInheritedFields() {
+        Manager manager = new Manager();
+        manager.setTitle("Boss");
+        manager.setHeight(72.0F);
+        manager.setId(42L);
+        manager.setBadge("A-113");
+        ObjectFilter filter = filter(
+                noise().from(Manager.class),
+                secrets().from(Manager.class)
+        );
+        Manager filtered = (Manager)filter.filterAsEvaluatedCopy(manager);
+        assertEquals(manager.getTitle(), filtered.getTitle());
+        assertEquals(DefaultValue.of(String.class), filtered.getBadge());
+        // Fields inherited from Baz
+        assertEquals(DefaultValue.of(Float.class), filtered.getHeight());
+        assertEquals(DefaultValue.of(Long.class), filtered.getId());
+        filtered = (Manager)filter.filterAsReferenceCopy(manager);
+        assertEquals(DefaultValue.of(String.class), filtered.getBadge());
+        assertEquals(DefaultValue.of(Float.class), filtered.getHeight());
+        assertEquals(manager.getId(), filtered.getId());
+    }
+
+    @Test
+    public void testFilterAsCopies() {
+        ObjectFilter filter = filter(
+                noise().from(Foo.class),
+                secrets().from(Foo.class),
+                noise().from(Baz.class),
+                secrets().from(Baz.class)
+        );
+        FilteredCopies<Object> copies = filter.filterAsCopies(foo);
+        Foo reference = (Foo)copies.getReference();
+        Foo evaluated = (Foo)copies.getEvaluated();
+        assertNotSame(foo, reference);
+        assertEquals(filter.filterAsReferenceCopy(foo), reference);
+        assertEquals(filter.filterAsEvaluatedCopy(foo), evaluated);
+        // Untouched subgraphs are shared between the two copies
+        assertSame(reference.getBaz().getTaskTime(), evaluated.getBaz().getTaskTime());
+
+        filter = filter(noise().from(Foo.class));
+        copies = filter.filterAsCopies(foo);
+        reference = (Foo)copies.getReference();
+        evaluated = (Foo)copies.getEvaluated();
+        assertEquals(foo.getTimestamp(), reference.getTimestamp());
+        assertEquals(DefaultValue.of(LocalDateTime.class), evaluated.getTimestamp());
+        assertSame(reference.getBaz(), evaluated.getBaz());
+    }
+
+    @Test
+    public void testImmutablesPassThrough() {
+        ObjectFilter filter = filter(
+                noise().from(Foo.class),
+                secrets().from(Foo.class)
+        );
+        Object[] arguments = new Object[] {
+                "id", 42L, UUID.randomUUID(), LocalDateTime.now(), Title.Clerical, new EmployeeId("E-1")
+        };
+        FilteredCopies<Object[]> copies = filter.filterAsCopies(arguments);
+        for(int i = 0; i < arguments.length; ++i) {
+            assertSame(arguments[i], copies.getReference()[i]);
+            assertSame(arguments[i], copies.getEvaluated()[i]);
+        }
+
+        TenantId tenantId = new TenantId(7L);
+        assertNotSame(tenantId, filter.filterAsReferenceCopy(tenantId));
+        ImmutableTypes.register(TenantId.class);
+        assertSame(tenantId, filter.filterAsReferenceCopy(tenantId));
+        assertSame(tenantId, filter.filterAsEvaluatedCopy(tenantId));
+    }
+
+    @Test
+    public void testBudgets() {
+        ObjectFilter filter = filter(
+                noise().from(Foo.class),
+                secrets().from(Foo.class)
+        );
+        Map<TimeUnit, Title> taskTime = new HashMap<>();
+        taskTime.put(TimeUnit.MINUTES, Title.Clerical);
+        taskTime.put(TimeUnit.HOURS, Title.Management);
+        Foo busy = new Foo("Bob", "Smith", 35, LocalDateTime.now(), new Baz("Pawn", 1.0D, 2.0F, 3L, taskTime));
+        FilteredCopies<Object> copies = filter.filterAsCopies(busy);
+        assertFalse(copies.isTruncated());
+        assertNotNull(copies.getReference());
+
+        copies = filter.toCollectionSize(1).filterAsCopies(busy);
+        assertTrue(copies.isTruncated());
+        assertNull(copies.getReference());
+        assertNull(copies.getEvaluated());
+        assertNull(filter.filterAsEvaluatedCopy(busy));
+
+        filter.toCollectionSize(1000).toObjectCount(3);
+        assertTrue(filter.filterAsCopies(busy).isTruncated());
+
+        filter.toObjectCount(1000).toEstimatedBytes(64L);
+        assertTrue(filter.filterAsCopies(busy).isTruncated());
+        FilteredCopies<Object[]> arguments = filter.filterAsCopies(new Object[] { "small", busy });
+        assertTrue(arguments.isTruncated());
+        assertEquals("small", arguments.getReference()[0]);
+        assertNull(arguments.getReference()[1]);
+
+        // Immutable values are shared without being counted, and snapshots are held to the same budget
+        String name = "a name longer than the whole budget allows";
+        assertSame(name, filter.filterAsCopies(name).getReference());
+        assertFalse(filter.filterAsCopies(name).isTruncated());
+        assertSame(name, filter.filterAsReferenceCopy(name));
+        assertTrue(filter.filterAsSnapshots(busy).isTruncated());
+        assertNull(filter.filterAsSnapshots(busy).getReference());
+        filter.toEstimatedBytes(1L << 20);
+        assertFalse(filter.filterAsSnapshots(busy).isTruncated());
+        assertTrue(filter.toCollectionSize(1).filterAsSnapshots(busy).isTruncated());
+        filter.toCollectionSize(1000);
+
+        // Cycles are visited once
+        filter.toEstimatedBytes(1024L);
+        copies = filter.filterAsCopies(new Loop());
+        assertFalse(copies.isTruncated());
+        Loop loop = (Loop)copies.getReference();
+        assertSame(loop, loop.getNext());
+    }
+
+    @Test
+    public void testFilterAsSnapshots() throws JsonProcessingException {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectFilter filter = filter(
+                noise().from(Foo.class),
+                secrets().from(Foo.class),
+                noise().from(Baz.class),
+                secrets().from(Baz.class)
+        );
+        FilteredCopies<Object> snapshots = filter.filterAsSnapshots(foo);
+        JsonNode reference = (JsonNode)snapshots.getReference();
+        JsonNode evaluated = (JsonNode)snapshots.getEvaluated();
+        assertEquals(foo.getFirstName(), reference.get("firstName").asText());
+        assertEquals(DefaultValue.of(String.class), reference.get("lastName").asText());
+        assertFalse(reference.get("timestamp").isNull());
+        assertTrue(evaluated.get("timestamp").isNull());
+        assertEquals(foo.getBaz().getId().longValue(), reference.get("baz").get("id").asLong());
+        assertEquals(DefaultValue.of(Long.class), evaluated.get("baz").get("id").asLong());
+        // Snapshots serialize just like the filtered copies do
+        assertEquals(mapper.writeValueAsString(filter.filterAsReferenceCopy(foo)), mapper.writeValueAsString(reference));
+        assertEquals(mapper.writeValueAsString(filter.filterAsEvaluatedCopy(foo)), mapper.writeValueAsString(evaluated));
+        // and the original is untouched
+        assertEquals("Smith", foo.getLastName());
+        assertSame(foo.getFirstName(), filter.filterAsSnapshots(foo.getFirstName()).getEvaluated());
+    }
+
+    @Test
+    public void testGeneratedCopiers() {
+        // Badge has a copier generated when the tests are compiled. Foo and Baz have private fields, which would
+        // only be reachable through their accessors, and Manager extends Baz, so they're copied reflectively.
+        assertNotNull(GeneratedCopiers.of(Badge.class));
+        assertNull(GeneratedCopiers.of(Foo.class));
+        assertNull(GeneratedCopiers.of(Baz.class));
+        assertNull(GeneratedCopiers.of(Manager.class));
+        assertEquals("io.shadowstack.filters.ObjectFilterTest_Loop_ShadowCopier", GeneratedCopiers.copierName(Loop.class.getName()));
+
+        Map<TimeUnit, Title> taskTime = new HashMap<>();
+        taskTime.put(TimeUnit.HOURS, Title.Clerical);
+        Baz baz = new Baz("Clerk", 10.0D, 68.0F, 7L, taskTime);
+        Badge original = new Badge("Bob", "1234", LocalDateTime.now(), baz);
+        ObjectFilter filter = filter(
+                noise().from(Badge.class),
+                secrets().from(Badge.class),
+                noise().from(Baz.class),
+                secrets().from(Baz.class)
+        );
+        FilteredCopies<Object> copies = filter.filterAsCopies(original);
+        Badge reference = (Badge)copies.getReference();
+        Badge evaluated = (Badge)copies.getEvaluated();
+        assertNotSame(original.baz, reference.baz);
+        assertNotSame(original.baz.getTaskTime(), reference.baz.getTaskTime());
+        assertEquals(taskTime, reference.baz.getTaskTime());
+        assertEquals(original.holder, reference.holder);
+        assertEquals(DefaultValue.of(String.class), reference.pin);
+        assertEquals(original.issued, reference.issued);
+        assertNull(evaluated.issued);
+        assertEquals(DefaultValue.of(Long.class), evaluated.baz.getId());
+        assertEquals(original.baz.getId(), reference.baz.getId());
+        assertEquals(0, PIN_READS.get());
+        // and the original is untouched
+        assertEquals("1234", original.pin);
+        assertEquals(7L, original.baz.getId());
+    }
 }
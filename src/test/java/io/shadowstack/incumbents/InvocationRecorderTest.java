@@ -1,19 +1,36 @@
 package io.shadowstack.incumbents;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import io.shadowstack.*;
 import io.shadowstack.invocations.Invocation;
+import io.shadowstack.invocations.InvocationContext;
+import io.shadowstack.invocations.InvocationKey;
+import io.shadowstack.invocations.MethodDescriptor;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
+import io.shadowstack.filters.FieldFilter;
+import io.shadowstack.filters.FilteredCopies;
 import io.shadowstack.filters.Noise;
 import io.shadowstack.filters.ObjectFilter;
 import io.shadowstack.filters.Secret;
+import io.shadowstack.throttles.Throttle;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
+import java.lang.reflect.Method;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static io.shadowstack.Fluently.*;
@@ -122,6 +139,67 @@ public class InvocationRecorderTest extends BaseTest {
         log.info(name + " finishing.");
     }
 
+    @Test
+    public void testOversizedArgumentIsTruncated() throws InterruptedException, TimeoutException, ExecutionException {
+        String name = new Object(){}.getClass().getEnclosingMethod().getName();
+        log.info(name + " starting.");
+        CompletableFuture<Invocation> future = new CompletableFuture<>();
+        ObjectFilter filter = filter(
+                noise().from(Foo.class),
+                secrets().from(Foo.class)
+        ).toCollectionSize(1);
+        Map<TimeUnit, Title> taskTime = new HashMap<>();
+        taskTime.put(TimeUnit.MINUTES, Title.Clerical);
+        taskTime.put(TimeUnit.HOURS, Title.Management);
+        Foo busy = new Foo("Bob", "Smith", 35, LocalDateTime.now(), new Baz("Pawn", 1.0D, 2.0F, 3L, taskTime));
+        Bar proxy = record(bar)
+                .filteringWith(filter)
+                .sendingTo(new InvocationSink(invocations -> {
+                    future.complete(invocations.get(0));
+                    return invocations;
+                }).withBatchSize(1))
+                .buildProxy(Bar.class);
+        assertEquals(result, proxy.doSomethingShadowed(busy));
+        Invocation invocation = future.get(5L, TimeUnit.SECONDS);
+        assertTrue(invocation.isTruncated());
+        assertNull(invocation.getReferenceArguments()[0]);
+        assertNull(invocation.getEvaluatedArguments()[0]);
+        assertEquals(result, invocation.getReferenceResult());
+        log.info(name + " finishing.");
+    }
+
+    @Test
+    public void testSnapshotting() throws InterruptedException, TimeoutException, ExecutionException, NoSuchMethodException {
+        String name = new Object(){}.getClass().getEnclosingMethod().getName();
+        log.info(name + " starting.");
+        CompletableFuture<Invocation> future = new CompletableFuture<>();
+        ObjectFilter filter = filter(
+                noise().from(Foo.class),
+                secrets().from(Foo.class),
+                noise().from(Baz.class),
+                secrets().from(Baz.class)
+        );
+        Bar proxy = record(bar)
+                .filteringWith(filter)
+                .snapshotting()
+                .sendingTo(new InvocationSink(invocations -> {
+                    future.complete(invocations.get(0));
+                    return invocations;
+                }).withBatchSize(1))
+                .buildProxy(Bar.class);
+        assertEquals(result, proxy.doSomethingShadowed(foo));
+        Invocation invocation = future.get(5L, TimeUnit.SECONDS);
+        assertTrue(invocation.getReferenceArguments()[0] instanceof JsonNode);
+        JsonNode referenceFoo = (JsonNode) invocation.getReferenceArguments()[0];
+        assertEquals(DefaultValue.of(String.class), referenceFoo.get("lastName").asText());
+        assertEquals(result, invocation.getReferenceResult());
+        // A replayer hashing filtered copies finds the same key
+        Method method = Bar.class.getMethod("doSomethingShadowed", Foo.class);
+        InvocationKey expected = new InvocationKey(method, filter.filterAsEvaluatedCopy(new Object[] {foo}));
+        assertEquals(expected, invocation.getInvocationKey());
+        log.info(name + " finishing.");
+    }
+
     @Test
     public void testThrownExceptionIsPropagated() throws TimeoutException, InterruptedException {
         String name = new Object() {
@@ -198,6 +276,246 @@ public class InvocationRecorderTest extends BaseTest {
         assertThrows(TimeoutException.class, () -> await(5, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testNoveltyThrottling() throws TimeoutException, InterruptedException {
+        String name = new Object(){}.getClass().getEnclosingMethod().getName();
+        log.info(name + " starting.");
+        ObjectFilter filter = filter(
+                noise().from(Foo.class),
+                secrets().from(Foo.class)
+        );
+        AtomicInteger recorded = new AtomicInteger();
+        Bar proxy = record(bar)
+                .filteringWith(filter)
+                .throttlingTo(novel(1).per(1L, TimeUnit.HOURS))
+                .sendingTo(new InvocationSink(invocations -> {
+                    recorded.addAndGet(invocations.size());
+                    resume();
+                    return invocations;
+                }).withBatchSize(1))
+                .buildProxy(Bar.class);
+        Foo other = new Foo("Alice", "Jones", 40, LocalDateTime.now(), null);
+        for(int i = 0; i < 10; ++i) {
+            assertEquals(result, proxy.doSomethingShadowed(foo));
+            assertEquals("Alice Jones", proxy.doSomethingShadowed(other));
+        }
+        await(5, TimeUnit.SECONDS, 2);
+        Thread.sleep(200L);
+        assertEquals(2, recorded.get());
+        log.info(name + " finishing.");
+    }
+
+    @Test
+    public void testNovelElseSampledThrottling() throws TimeoutException, InterruptedException {
+        String name = new Object(){}.getClass().getEnclosingMethod().getName();
+        log.info(name + " starting.");
+        for(double percent : new double[] {0.0D, 100.0D}) {
+            AtomicInteger recorded = new AtomicInteger();
+            InvocationRecorder recorder = record(bar)
+                    .filteringWith(filter(noise().from(Foo.class), secrets().from(Foo.class)))
+                    .throttlingTo(Throttle.anyOf(novel(1).per(1L, TimeUnit.HOURS), percent(percent)))
+                    .sendingTo(new InvocationSink(invocations -> {
+                        recorded.addAndGet(invocations.size());
+                        return invocations;
+                    }));
+            Bar proxy = recorder.buildProxy(Bar.class);
+            Foo other = new Foo("Alice", "Jones", 40, LocalDateTime.now(), null);
+            for(int i = 0; i < 10; ++i) {
+                assertEquals(result, proxy.doSomethingShadowed(foo));
+                assertEquals("Alice Jones", proxy.doSomethingShadowed(other));
+            }
+            // Each key is recorded the first time it's seen, and after that only if it's sampled
+            assertEquals(percent == 0.0D? 2 : 20, recorder.getPublishedCount());
+        }
+        log.info(name + " finishing.");
+    }
+
+    public static class Chain {
+        private Bar next;
+
+        public Chain() {}
+
+        public Chain(Bar next) {
+            this.next = next;
+        }
+
+        public String call(Foo f) {
+            return this.next.doSomethingShadowed(f);
+        }
+
+        public Bar getNext() {
+            return this.next;
+        }
+    }
+
+    public static class ContextReader {
+        public String currentId() {
+            return InvocationContext.currentId();
+        }
+    }
+
+    private static ObjectFilter countingFilter(AtomicInteger copies) {
+        return new ObjectFilter(new FieldFilter[] {noise().from(Foo.class).build()}) {
+            @Override
+            public FilteredCopies<Object[]> filterAsCopies(Object[] arguments) {
+                copies.incrementAndGet();
+                return super.filterAsCopies(arguments);
+            }
+        };
+    }
+
+    @Test
+    public void testPerMethodPolicies() throws Exception {
+        String name = new Object(){}.getClass().getEnclosingMethod().getName();
+        log.info(name + " starting.");
+        AtomicInteger defaultCopies = new AtomicInteger();
+        AtomicInteger callCopies = new AtomicInteger();
+        Set<String> recordedMethods = ConcurrentHashMap.newKeySet();
+        AtomicInteger recorded = new AtomicInteger();
+        InvocationRecorder recorder = record(new Chain(bar))
+                .filteringWith(countingFilter(defaultCopies))
+                .excluding(getters())
+                .forMethods(methodsNamed("call"), RecorderPolicy.MethodPolicy.builder()
+                        .objectFilter(countingFilter(callCopies))
+                        .build())
+                .forMethods(methodsNamed("toString"), RecorderPolicy.MethodPolicy.builder()
+                        .throttle(percent(0.0))
+                        .build());
+        Chain proxy = recorder
+                .sendingTo(new InvocationSink(invocations -> {
+                    invocations.forEach(i -> recordedMethods.add(i.getInvocationKey().getTargetMethodName()));
+                    recorded.addAndGet(invocations.size());
+                    return invocations;
+                }).withBatchSize(1))
+                .buildProxy(Chain.class);
+        for(int i = 0; i < 10; ++i) {
+            assertNotNull(proxy.getNext());
+            assertNotNull(proxy.toString());
+        }
+        for(int i = 0; i < 3; ++i) {
+            assertEquals(result, proxy.call(foo));
+        }
+        for(int i = 0; i < 50 && recorded.get() < 3; ++i) {
+            Thread.sleep(100L);
+        }
+        Thread.sleep(200L);
+        assertEquals(3, recorded.get());
+        assertEquals(Collections.singleton("call"), recordedMethods);
+        assertEquals(3, callCopies.get());
+        assertEquals(0, defaultCopies.get(), "Excluded and rejected calls are never copied");
+
+        // Worked out once per method and policy
+        Method call = Chain.class.getMethod("call", Foo.class);
+        RecorderPolicy.Resolution resolution = recorder.getPolicy().resolve(call);
+        assertSame(resolution, recorder.getPolicy().resolve(call));
+        assertSame(MethodDescriptor.of(call), resolution.getDescriptor());
+        assertEquals("io.shadowstack.incumbents.InvocationRecorderTest.Chain", resolution.getDescriptor().getClassName());
+        assertFalse(recorder.getPolicy().isEnabled(Chain.class.getMethod("getNext")));
+        log.info(name + " finishing.");
+    }
+
+    @Test
+    public void testContextsAreOnlyOpenedWhenNeeded() {
+        ObjectFilter filter = filter(noise().from(Foo.class));
+        ContextReader sampledOut = record(new ContextReader())
+                .filteringWith(filter)
+                .throttlingTo(percent(0.0))
+                .buildProxy(ContextReader.class);
+        assertNull(sampledOut.currentId(), "A call rejected by a throttle that ignores the context opens none");
+        ContextReader chainsSampledOut = record(new ContextReader())
+                .filteringWith(filter)
+                .throttlingTo(percentOfContexts(0.0))
+                .buildProxy(ContextReader.class);
+        assertNotNull(chainsSampledOut.currentId(), "One that goes by the context opens it to decide");
+        ContextReader unthrottled = record(new ContextReader())
+                .filteringWith(filter)
+                .buildProxy(ContextReader.class);
+        assertNotNull(unthrottled.currentId());
+        assertNull(InvocationContext.currentId());
+    }
+
+    @Test
+    public void testContextPercentageThrottling() throws TimeoutException, InterruptedException {
+        String name = new Object(){}.getClass().getEnclosingMethod().getName();
+        log.info(name + " starting.");
+        ObjectFilter filter = filter(
+                noise().from(Foo.class),
+                secrets().from(Foo.class)
+        );
+        Set<String> innerContexts = ConcurrentHashMap.newKeySet();
+        Set<String> outerContexts = ConcurrentHashMap.newKeySet();
+        Bar inner = record(bar)
+                .filteringWith(filter)
+                .throttlingTo(percentOfContexts(25))
+                .sendingTo(new InvocationSink(invocations -> {
+                    invocations.forEach(i -> innerContexts.add(i.getInvocationContext().getContextId()));
+                    return invocations;
+                }).withBatchSize(1))
+                .buildProxy(Bar.class);
+        Chain outer = record(new Chain(inner))
+                .filteringWith(filter)
+                .throttlingTo(percentOfContexts(25))
+                .sendingTo(new InvocationSink(invocations -> {
+                    invocations.forEach(i -> outerContexts.add(i.getInvocationContext().getContextId()));
+                    return invocations;
+                }).withBatchSize(1))
+                .buildProxy(Chain.class);
+        for(int i = 0; i < 400; ++i) {
+            assertEquals(result, outer.call(foo));
+        }
+        Thread.sleep(500L);
+        // Whole chains are recorded or skipped together
+        assertEquals(outerContexts, innerContexts);
+        assertTrue(outerContexts.size() > 50 && outerContexts.size() < 150, "Recorded " + outerContexts.size());
+        log.info(name + " finishing.");
+    }
+
+    @Test
+    public void testRejectedCallsAreNotCopied() {
+        String name = new Object(){}.getClass().getEnclosingMethod().getName();
+        log.info(name + " starting.");
+        final AtomicInteger copies = new AtomicInteger(0);
+        ObjectFilter filter = new ObjectFilter(new FieldFilter[] {
+                noise().from(Foo.class).build(),
+                secrets().from(Foo.class).build()
+        }) {
+            @Override
+            public FilteredCopies<Object> filterAsCopies(Object obj) {
+                copies.incrementAndGet();
+                return super.filterAsCopies(obj);
+            }
+
+            @Override
+            public FilteredCopies<Object[]> filterAsCopies(Object[] arguments) {
+                copies.incrementAndGet();
+                return super.filterAsCopies(arguments);
+            }
+        };
+        // Sends happen on the sink's threads, where a failed assertion wouldn't reach the test, so they're counted
+        final AtomicInteger sent = new AtomicInteger(0);
+        InvocationSink sink = new InvocationSink(invocations -> {
+            sent.addAndGet(invocations.size());
+            return invocations;
+        }).withBatchSize(1);
+        InvocationRecorder recorder = record(bar)
+                .filteringWith(filter)
+                .throttlingTo(
+                        percent(0.0)
+                )
+                .sendingTo(sink);
+        Bar proxy = recorder.buildProxy(Bar.class);
+        for(int i=0; i<100; ++i) {
+            assertEquals(result, proxy.doSomethingShadowed(foo));
+        }
+        assertThrows(NotImplementedException.class, () -> proxy.doSomethingBad(foo));
+        assertEquals(0L, recorder.getPublishedCount());
+        assertEquals(0, recorder.getQueueDepth());
+        sink.flush();
+        assertEquals(0, sent.get(), "Transmit should never have been called.");
+        assertEquals(0, copies.get());
+        log.info(name + " finishing.");
+    }
+
     @Test
     public void testRateThrottling() throws InterruptedException, TimeoutException {
         String name = new Object(){}.getClass().getEnclosingMethod().getName();
@@ -230,6 +548,108 @@ public class InvocationRecorderTest extends BaseTest {
         log.info(name + " finishing.");
     }
 
+    @Test
+    public void testSlowSinkCausesCountedDrops() throws InterruptedException {
+        String name = new Object(){}.getClass().getEnclosingMethod().getName();
+        log.info(name + " starting.");
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger sent = new AtomicInteger();
+        InvocationRecorder recorder = record(bar)
+                .filteringWith(filter(noise().from(Foo.class)))
+                .queueingUpTo(8)
+                .sendingTo(new InvocationSink(invocations -> {
+                    try {
+                        release.await();
+                    } catch(InterruptedException ignored) { }
+                    sent.addAndGet(invocations.size());
+                    return invocations;
+                }).withBatchSize(1));
+        Bar proxy = recorder.buildProxy(Bar.class);
+        // Recording carries on while the sink is stuck, and what doesn't fit in the queue is counted as dropped
+        for(int i = 0; i < 100; ++i) {
+            assertEquals(result, proxy.doSomethingShadowed(foo));
+        }
+        assertEquals(100L, recorder.getPublishedCount() + recorder.getDroppedCount());
+        assertTrue(recorder.getDroppedCount() >= 100 - 8 - 1, "Dropped " + recorder.getDroppedCount());
+        assertTrue(recorder.getQueueDepth() <= 8);
+        release.countDown();
+        for(int i = 0; i < 50 && recorder.getQueueDepth() > 0; ++i) {
+            Thread.sleep(100L);
+        }
+        Thread.sleep(200L);
+        assertEquals(0, recorder.getQueueDepth());
+        assertEquals(recorder.getPublishedCount(), sent.get());
+        log.info(name + " finishing.");
+    }
+
+    @Test
+    public void testSinksShareDrainerThreads() throws InterruptedException {
+        String name = new Object(){}.getClass().getEnclosingMethod().getName();
+        log.info(name + " starting.");
+        int threadsBefore = Thread.activeCount();
+        AtomicInteger sent = new AtomicInteger();
+        List<InvocationRecorder> recorders = new ArrayList<>();
+        for(int i = 0; i < 200; ++i) {
+            InvocationRecorder recorder = record(bar)
+                    .filteringWith(filter(noise().from(Foo.class)))
+                    .sendingTo(new InvocationSink(invocations -> {
+                        sent.addAndGet(invocations.size());
+                        return invocations;
+                    }).withBatchSize(1));
+            assertEquals(result, recorder.buildProxy(Bar.class).doSomethingShadowed(foo));
+            recorders.add(recorder);
+        }
+        for(int i = 0; i < 50 && sent.get() < 200; ++i) {
+            Thread.sleep(100L);
+        }
+        assertEquals(200, sent.get());
+        // The queues are drained by a few shared threads, rather than one each that's never let go
+        long drainers = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("ring-buffer-"))
+                .count();
+        assertTrue(drainers <= Math.min(4, Runtime.getRuntime().availableProcessors()), drainers + " drainers");
+        assertTrue(Thread.activeCount() - threadsBefore < 50, Thread.activeCount() + " threads");
+
+        // Closed recorders don't queue anything more
+        for(InvocationRecorder recorder : recorders) {
+            recorder.close();
+        }
+        InvocationRecorder closed = recorders.get(0);
+        assertEquals(result, closed.buildProxy(Bar.class).doSomethingShadowed(foo));
+        assertEquals(1L, closed.getDroppedCount());
+        assertEquals(0, closed.getQueueDepth());
+        log.info(name + " finishing.");
+    }
+
+    @Test
+    public void testSharedSinkKeepsItsFirstRecorder() throws InterruptedException {
+        String name = new Object(){}.getClass().getEnclosingMethod().getName();
+        log.info(name + " starting.");
+        AtomicInteger sent = new AtomicInteger();
+        InvocationSink sink = new InvocationSink(invocations -> {
+            sent.addAndGet(invocations.size());
+            return invocations;
+        }).withBatchSize(1);
+        InvocationRecorder first = record(bar).filteringWith(filter(noise().from(Foo.class))).sendingTo(sink);
+        InvocationRecorder second = record(bar).filteringWith(filter(noise().from(Foo.class))).sendingTo(sink);
+        Bar firstProxy = first.buildProxy(Bar.class);
+        Bar secondProxy = second.buildProxy(Bar.class);
+        for(int i = 0; i < 10; ++i) {
+            assertEquals(result, firstProxy.doSomethingShadowed(foo));
+            assertEquals(result, secondProxy.doSomethingShadowed(foo));
+        }
+        for(int i = 0; i < 50 && (sent.get() < 10 || second.getQueueDepth() > 0); ++i) {
+            Thread.sleep(100L);
+        }
+        // The second subscription is cancelled, rather than taking the first's place and starving it, and what's
+        // recorded into its queue is let go of rather than piling up
+        assertEquals(10L, first.getPublishedCount());
+        assertEquals(10, sent.get());
+        assertEquals(10L, second.getPublishedCount() + second.getDroppedCount());
+        assertEquals(0, second.getQueueDepth());
+        log.info(name + " finishing.");
+    }
+
     @Test
     public void testNullClassYieldsNullProxy() {
         String name = new Object(){}.getClass().getEnclosingMethod().getName();
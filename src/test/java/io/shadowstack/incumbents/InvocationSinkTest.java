@@ -1,10 +1,37 @@
 package io.shadowstack.incumbents;
 
+import io.shadowstack.BaseTest;
 import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.Flux;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InvocationSinkTest extends BaseTest {
+    /**
+     * Stands in for the recorder's queue, keeping count of what the sink asked for.
+     */
+    private static class Demand implements Subscription {
+        private final AtomicLong requested = new AtomicLong();
+
+        @Override
+        public void request(long n) {
+            this.requested.addAndGet(n);
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
 
-public class InvocationSinkTest {
     @Test
     public void testBadBatchSizeDefault() {
         InvocationSink sink = new InvocationSink(invocations -> {
@@ -12,4 +39,164 @@ public class InvocationSinkTest {
         }).withBatchSize(-1);
         assertEquals(1, sink.getBatchSize());
     }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        for(int i = 0; i < 100 && !condition.getAsBoolean(); ++i) {
+            Thread.sleep(50L);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void testSendsOnSizeOrLingerWhicheverComesFirst() throws InterruptedException {
+        List<Integer> batches = new CopyOnWriteArrayList<>();
+        InvocationSink sink = new InvocationSink(invocations -> {
+            batches.add(invocations.size());
+            return invocations;
+        }).withBatchSize(3).lingeringFor(300L, TimeUnit.MILLISECONDS);
+        Demand demand = new Demand();
+        sink.onSubscribe(demand);
+        assertEquals(3L, demand.requested.get());
+        for(int i = 0; i < 4; ++i) {
+            sink.onNext(invocation(0));
+        }
+        awaitTrue(() -> batches.size() == 1); // a full batch is sent straight away
+        awaitTrue(() -> demand.requested.get() == 6L); // and as much is asked for again once it's been sent
+        awaitTrue(() -> batches.size() == 2); // the rest is sent once it's lingered
+        assertEquals(1, (int) batches.get(1));
+        awaitTrue(() -> demand.requested.get() == 7L);
+
+        // Without a linger time, only full batches are sent
+        sink = new InvocationSink(invocations -> {
+            batches.add(invocations.size());
+            return invocations;
+        }).withBatchSize(3);
+        sink.onSubscribe(new Demand());
+        sink.onNext(invocation(0));
+        Thread.sleep(500L);
+        assertEquals(2, batches.size());
+        sink.onComplete();
+        awaitTrue(() -> batches.size() == 3); // but everything is sent on completion
+    }
+
+    @Test
+    public void testBoundsBatchesInFlight() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger sending = new AtomicInteger();
+        AtomicInteger mostSending = new AtomicInteger();
+        AtomicInteger sent = new AtomicInteger();
+        AtomicLong emitted = new AtomicLong();
+        InvocationSink sink = new InvocationSink(invocations -> {
+            mostSending.accumulateAndGet(sending.incrementAndGet(), Math::max);
+            try {
+                release.await();
+            } catch(InterruptedException ignored) { }
+            sending.decrementAndGet();
+            sent.addAndGet(invocations.size());
+            return invocations;
+        }).withBatchSize(5).sendingConcurrently(2);
+        Flux.range(0, 100).map(BaseTest::invocation).doOnNext(i -> emitted.incrementAndGet()).subscribe(sink);
+        awaitTrue(() -> sink.getInFlight() == 2);
+        Thread.sleep(200L);
+        // Two batches in flight, and no more asked for until one of them is done
+        assertEquals(10L, emitted.get());
+        release.countDown();
+        awaitTrue(() -> sent.get() == 100);
+        assertEquals(2, mostSending.get());
+        assertEquals(0, sink.getInFlight());
+    }
+
+    @Test
+    public void testRetriesUntilTheDeadline() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        List<Integer> sent = new CopyOnWriteArrayList<>();
+        InvocationSink sink = new InvocationSink(invocations -> {
+            if(attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("Unavailable");
+            }
+            sent.add(invocations.size());
+            return invocations;
+        }).withBatchSize(2).retrying(10L, 1000L, TimeUnit.MILLISECONDS);
+        Flux.range(0, 4).map(BaseTest::invocation).subscribe(sink);
+        awaitTrue(() -> sent.size() == 2);
+        assertEquals(4, attempts.get(), "Two failures, then both batches");
+
+        // A destination that never recovers is given up on, and the sink carries on
+        AtomicInteger failures = new AtomicInteger();
+        InvocationSink failing = new InvocationSink(invocations -> {
+            failures.incrementAndGet();
+            throw new IllegalStateException("Unavailable");
+        }).withBatchSize(1).retrying(10L, 100L, TimeUnit.MILLISECONDS);
+        Flux.range(0, 2).map(BaseTest::invocation).subscribe(failing);
+        awaitTrue(() -> failing.getInFlight() == 0 && failures.get() >= 4);
+        Thread.sleep(300L);
+        int total = failures.get();
+        assertTrue(total >= 4 && total <= 20, "Attempted " + total + " times");
+        assertEquals(0, failing.getInFlight());
+    }
+
+    @Test
+    public void testAdaptsBatchSizeToSendTime() throws InterruptedException {
+        // Each invocation takes 1ms to send, so 10ms sends fit 10 of them
+        AtomicInteger sent = new AtomicInteger();
+        InvocationSink sink = new InvocationSink(invocations -> {
+            try {
+                Thread.sleep(invocations.size());
+            } catch(InterruptedException ignored) { }
+            sent.addAndGet(invocations.size());
+            return invocations;
+        }).withBatchSize(100).adaptingBatchSizeTo(10L, TimeUnit.MILLISECONDS);
+        assertEquals(100, sink.getCurrentBatchSize());
+        Flux.range(0, 1000).map(BaseTest::invocation).subscribe(sink);
+        awaitTrue(() -> sent.get() == 1000);
+        int size = sink.getCurrentBatchSize();
+        assertTrue(size >= 5 && size <= 12, "Settled on " + size);
+    }
+
+    @Test
+    public void testRequestsAreNeverConcurrent() throws InterruptedException {
+        // Sends finish on many threads at once, each of which may have news for the sink
+        AtomicInteger sent = new AtomicInteger();
+        InvocationSink sink = new InvocationSink(invocations -> {
+            try {
+                Thread.sleep(1L);
+            } catch(InterruptedException ignored) { }
+            sent.addAndGet(invocations.size());
+            return invocations;
+        }).withBatchSize(4).lingeringFor(1L, TimeUnit.MILLISECONDS).sendingConcurrently(2);
+        AtomicInteger requesting = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicLong requested = new AtomicLong();
+        sink.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+                if(requesting.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                requested.addAndGet(n);
+                try {
+                    Thread.sleep(1L); // widen the window for another request to overlap this one
+                } catch(InterruptedException ignored) { }
+                requesting.decrementAndGet();
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        int delivered = 0;
+        long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while(delivered < 2000 && System.nanoTime() - giveUp < 0L) {
+            if(delivered < requested.get()) {
+                sink.onNext(invocation(0));
+                ++delivered;
+            } else {
+                Thread.yield();
+            }
+        }
+        assertEquals(2000, delivered);
+        awaitTrue(() -> sent.get() == 2000);
+        assertEquals(0, overlaps.get(), "Requests overlapped");
+        assertEquals(0, sink.getInFlight());
+    }
 }
@@ -0,0 +1,139 @@
+package io.shadowstack.incumbents;
+
+import io.shadowstack.Bar;
+import io.shadowstack.BaseTest;
+import io.shadowstack.Foo;
+import io.shadowstack.filters.ObjectFilter;
+import io.shadowstack.throttles.Novelty;
+import io.shadowstack.throttles.Percentage;
+import io.shadowstack.throttles.Rate;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.shadowstack.Fluently.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecorderPolicyFileTest extends BaseTest {
+    private static void write(Path path, long modified, String... lines) throws Exception {
+        Files.write(path, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(modified));
+    }
+
+    @Test
+    public void testPoliciesFollowTheFile() throws Exception {
+        Method shadowed = Bar.class.getMethod("doSomethingShadowed", Foo.class);
+        Method bad = Bar.class.getMethod("doSomethingBad", Foo.class);
+        ObjectFilter base = filter(noise().from(Foo.class));
+        ObjectFilter strict = filter(secrets().from(Foo.class));
+        InvocationRecorder recorder = record(new Bar()).filteringWith(base).throttlingTo(percent(50.0));
+        Path path = Files.createTempFile("recorder-policy", ".properties");
+        try(RecorderPolicyFile file = new RecorderPolicyFile(path).withFilter("strict", strict).applyingTo(recorder)) {
+            write(path, 1000L,
+                    "throttle=rate 10 per 1 seconds",
+                    "methods.doSomethingShadowed.filter=strict",
+                    "methods.doSomethingBad.enabled=false");
+            assertTrue(file.reload());
+            assertFalse(file.reload(), "Unchanged files aren't loaded again");
+            RecorderPolicy policy = recorder.getPolicy();
+            assertTrue(policy.isEnabled(shadowed));
+            assertFalse(policy.isEnabled(bad));
+            assertTrue(policy.getThrottle(shadowed) instanceof Rate);
+            assertSame(strict, policy.getObjectFilter(shadowed));
+            assertSame(base, policy.getObjectFilter(bad), "Whatever the file leaves out comes from the recorder");
+
+            // Settings removed from the file revert to the recorder's own
+            write(path, 2000L, "methods.doSomethingShadowed.throttle=novel 1 per 1 hours");
+            assertTrue(file.reload());
+            policy = recorder.getPolicy();
+            assertTrue(policy.isEnabled(bad));
+            assertTrue(policy.getThrottle(bad) instanceof Percentage);
+            assertTrue(policy.getThrottle(shadowed) instanceof Novelty);
+
+            // Edits that leave the time and size as they were are still seen
+            write(path, 2000L, "methods.doSomethingShadowed.throttle=rate 1 per 1 hours");
+            assertTrue(file.reload());
+            policy = recorder.getPolicy();
+            assertTrue(policy.getThrottle(shadowed) instanceof Rate);
+
+            // Broken files are ignored
+            write(path, 3000L, "throttle=sometimes");
+            assertFalse(file.reload());
+            write(path, 4000L, "methods.doSomethingShadowed.filter=lenient");
+            assertFalse(file.reload());
+            assertSame(policy, recorder.getPolicy());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testRecordersCanBeDetachedOrLetGo() throws Exception {
+        Method shadowed = Bar.class.getMethod("doSomethingShadowed", Foo.class);
+        InvocationRecorder detached = record(new Bar()).throttlingTo(percent(50.0));
+        InvocationRecorder dropped = record(new Bar());
+        WeakReference<InvocationRecorder> reference = new WeakReference<>(dropped);
+        Path path = Files.createTempFile("recorder-policy", ".properties");
+        try(RecorderPolicyFile file = new RecorderPolicyFile(path).applyingTo(detached).applyingTo(dropped)) {
+            write(path, 1000L, "throttle=rate 10 per 1 seconds");
+            assertTrue(file.reload());
+            assertTrue(detached.getPolicy().getThrottle(shadowed) instanceof Rate);
+
+            // A detached recorder keeps the policy it had
+            file.detach(detached);
+            write(path, 2000L, "throttle=novel 1 per 1 hours");
+            assertTrue(file.reload());
+            assertTrue(detached.getPolicy().getThrottle(shadowed) instanceof Rate);
+
+            // and one no longer used elsewhere isn't kept alive by the file
+            dropped = null;
+            for(int i = 0; i < 50 && reference.get() != null; ++i) {
+                System.gc();
+                TimeUnit.MILLISECONDS.sleep(20L);
+            }
+            assertNull(reference.get());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testPolicySwappedUnderARunningProxy() throws Exception {
+        AtomicInteger recorded = new AtomicInteger();
+        InvocationRecorder recorder = record(new Bar()).filteringWith(filter(noise().from(Foo.class)));
+        Bar proxy = recorder.sendingTo(new InvocationSink(invocations -> {
+                    recorded.addAndGet(invocations.size());
+                    return invocations;
+                }).withBatchSize(1))
+                .buildProxy(Bar.class);
+        Foo foo = new Foo("Bob", "Smith", 35, LocalDateTime.now(), null);
+        assertEquals("Bob Smith", proxy.doSomethingShadowed(foo));
+
+        recorder.updatingPolicy(p -> p.toBuilder().enabled(false).build());
+        for(int i = 0; i < 10; ++i) {
+            assertEquals("Bob Smith", proxy.doSomethingShadowed(foo));
+        }
+        recorder.updatingPolicy(p -> p.toBuilder()
+                .enabled(true)
+                .method("doSomethingShadowed", RecorderPolicy.MethodPolicy.builder().throttle(percent(0.0)).build())
+                .build());
+        for(int i = 0; i < 10; ++i) {
+            assertEquals("Bob Smith", proxy.doSomethingShadowed(foo));
+        }
+        recorder.usingPolicy(recorder.getPolicy().toBuilder().clearMethods().build());
+        assertEquals("Bob Smith", proxy.doSomethingShadowed(foo));
+        for(int i = 0; i < 50 && recorded.get() < 2; ++i) {
+            TimeUnit.MILLISECONDS.sleep(100L);
+        }
+        TimeUnit.MILLISECONDS.sleep(200L);
+        assertEquals(2, recorded.get());
+    }
+}
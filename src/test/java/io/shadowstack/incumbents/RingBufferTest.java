@@ -0,0 +1,185 @@
+package io.shadowstack.incumbents;
+
+import io.shadowstack.BaseTest;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RingBufferTest extends BaseTest {
+    @Test
+    public void testDropsWhenFull() {
+        RingBuffer<Integer> queue = new RingBuffer<>(3);
+        assertEquals(4, queue.getCapacity());
+        for(int i = 0; i < 4; ++i) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.getDepth());
+        assertEquals(4L, queue.getPublished());
+        assertEquals(1L, queue.getDropped());
+
+        assertEquals(0, (int) queue.poll());
+        assertTrue(queue.offer(5), "A slot freed by the consumer is reused");
+        for(int expected : new int[] {1, 2, 3, 5}) {
+            assertEquals(expected, (int) queue.poll());
+        }
+        assertNull(queue.poll());
+        assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        int producers = 8;
+        int itemsEach = 100_000;
+        RingBuffer<long[]> queue = new RingBuffer<>(1024);
+        CountDownLatch done = new CountDownLatch(1);
+        long[] lastSeen = new long[producers];
+        AtomicReference<String> error = new AtomicReference<>();
+        AtomicLong attempts = new AtomicLong();
+        AtomicLong accepted = new AtomicLong();
+        List<Long> received = new ArrayList<>();
+        queue.flux().subscribe(new BaseSubscriber<long[]>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1L);
+            }
+
+            @Override
+            protected void hookOnNext(long[] item) {
+                // Each producer's items arrive in the order it added them
+                if(item[1] <= lastSeen[(int) item[0]]) {
+                    error.compareAndSet(null, "Out of order: " + item[0] + "/" + item[1]);
+                }
+                lastSeen[(int) item[0]] = item[1];
+                received.add(item[1]);
+                if(item[1] == Long.MAX_VALUE && received.size() >= producers) {
+                    long finished = 0L;
+                    for(long seen : lastSeen) {
+                        finished += (seen == Long.MAX_VALUE)? 1L : 0L;
+                    }
+                    if(finished == producers) {
+                        done.countDown();
+                    }
+                }
+                request(1L);
+            }
+        });
+        List<Thread> threads = new ArrayList<>();
+        for(int p = 0; p < producers; ++p) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                long[][] items = new long[itemsEach + 1][];
+                for(int i = 0; i < itemsEach; ++i) {
+                    items[i] = new long[] {producer, i + 1};
+                }
+                items[itemsEach] = new long[] {producer, Long.MAX_VALUE};
+                for(int i = 0; i <= itemsEach; ++i) {
+                    attempts.incrementAndGet();
+                    if(queue.offer(items[i])) {
+                        accepted.incrementAndGet();
+                    } else if(i == itemsEach) {
+                        Thread.yield(); // the last item is retried until it fits
+                        --i;
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(done.await(10L, TimeUnit.SECONDS), "Every producer's last item arrived");
+        assertNull(error.get(), error.get());
+        assertEquals(accepted.get(), queue.getPublished());
+        assertEquals(attempts.get(), queue.getPublished() + queue.getDropped());
+        assertEquals(queue.getPublished(), received.size());
+        assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    public void testClosingCompletesOnceDrained() throws InterruptedException {
+        RingBuffer<Integer> queue = new RingBuffer<>(8);
+        for(int i = 0; i < 3; ++i) {
+            assertTrue(queue.offer(i));
+        }
+        List<Integer> received = new ArrayList<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        queue.flux().subscribe(new BaseSubscriber<Integer>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1L);
+            }
+
+            @Override
+            protected void hookOnNext(Integer item) {
+                received.add(item);
+                request(1L);
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                completed.countDown();
+            }
+        });
+        queue.close();
+        assertFalse(queue.offer(3), "A closed queue takes no more items");
+        assertTrue(completed.await(5L, TimeUnit.SECONDS));
+        assertEquals(3, received.size());
+        assertEquals(1L, queue.getDropped());
+    }
+
+    @Test
+    public void testProducersDoNotRescheduleADrainWithoutDemand() throws InterruptedException {
+        AtomicInteger scheduled = new AtomicInteger();
+        Executor pool = ForkJoinPool.commonPool();
+        Executor counting = task -> {
+            scheduled.incrementAndGet();
+            pool.execute(task);
+        };
+        RingBuffer<Integer> queue = new RingBuffer<>(1024, counting);
+        AtomicReference<Subscription> upstream = new AtomicReference<>();
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch rest = new CountDownLatch(501);
+        queue.flux().subscribe(new BaseSubscriber<Integer>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                upstream.set(subscription);
+                request(1L);
+            }
+
+            @Override
+            protected void hookOnNext(Integer item) {
+                first.countDown();
+                rest.countDown();
+            }
+        });
+        assertTrue(queue.offer(0));
+        assertTrue(first.await(5L, TimeUnit.SECONDS));
+        Thread.sleep(100L); // let the drain find there's no more demand
+        int before = scheduled.get();
+        // With nothing asked for, producers only add to the queue
+        for(int i = 1; i <= 500; ++i) {
+            assertTrue(queue.offer(i));
+        }
+        Thread.sleep(100L);
+        assertEquals(before, scheduled.get());
+        assertEquals(500, queue.getDepth());
+        // and a request wakes the drain again
+        upstream.get().request(500L);
+        assertTrue(rest.await(5L, TimeUnit.SECONDS));
+        assertEquals(0, queue.getDepth());
+    }
+}
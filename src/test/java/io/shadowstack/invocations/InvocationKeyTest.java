@@ -0,0 +1,191 @@
+package io.shadowstack.invocations;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.shadowstack.Bar;
+import io.shadowstack.BaseTest;
+import io.shadowstack.Baz;
+import io.shadowstack.Foo;
+import io.shadowstack.Title;
+import io.shadowstack.filters.Immutable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Value;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.MurmurHash3;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InvocationKeyTest extends BaseTest {
+    private static Foo newFoo(String lastName) {
+        Map<TimeUnit, Title> taskTime = new HashMap<>();
+        taskTime.put(TimeUnit.MINUTES, Title.Clerical);
+        Baz baz = new Baz("Pawn", 75000.00D, 69.5F, 1234L, taskTime);
+        return new Foo("Bob", lastName, 35, LocalDateTime.of(2020, 4, 1, 12, 0), baz);
+    }
+
+    @Test
+    public void testStreamedHashMatchesHashOfConcatenatedJson() throws Exception {
+        Method method = Bar.class.getMethod("doSomethingShadowed", Foo.class);
+        Foo foo = newFoo("Smithé");
+        char[] large = new char[1 << 20];
+        Arrays.fill(large, 'x');
+        Object[] arguments = new Object[] {foo, new String(large), null, "\"quoted\"\n", UUID.randomUUID(), true,
+                -42, Long.MAX_VALUE};
+        InvocationKey key = new InvocationKey(method, arguments);
+
+        ObjectMapper mapper = new ObjectMapper();
+        StringBuilder builder = new StringBuilder("io.shadowstack.Bar,doSomethingShadowed");
+        for(Object argument : arguments) {
+            builder.append(',').append(mapper.writeValueAsString(argument));
+        }
+        assertEquals(DigestUtils.sha256Hex(builder.toString()), key.getInvocationHash());
+        assertEquals(key, new InvocationKey(method, new Object[] {newFoo("Smithé"), new String(large), null,
+                arguments[3], arguments[4], true, -42, Long.MAX_VALUE}));
+        assertNotEquals(key.getInvocationHash(), new InvocationKey(method, new Object[] {newFoo("Jones")}).getInvocationHash());
+    }
+
+    @Test
+    public void testMurmur3MatchesOneShotHash() throws Exception {
+        Random random = new Random(42L);
+        for(int length : new int[] {0, 1, 7, 8, 9, 15, 16, 17, 31, 32, 33, 1000}) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            // Written in uneven pieces to exercise the carried-over tail
+            KeyHasher.Stream stream = KeyHasher.MURMUR3_128.newStream();
+            int offset = 0;
+            for(int piece = 1; offset < length; ++piece) {
+                int size = Math.min(piece % 5 == 0? 1 : piece, length - offset);
+                if(size == 1) {
+                    stream.write(bytes[offset]);
+                } else {
+                    stream.write(bytes, offset, size);
+                }
+                offset += size;
+            }
+            long[] expected = MurmurHash3.hash128x64(bytes, 0, length, 0);
+            byte[] encoded = ByteBuffer.allocate(16).putLong(expected[0]).putLong(expected[1]).array();
+            assertEquals(Base64.getUrlEncoder().withoutPadding().encodeToString(encoded), stream.encode());
+        }
+    }
+
+    @Test
+    public void testKeysRecordTheirHasher() throws Exception {
+        Method method = Bar.class.getMethod("doSomethingShadowed", Foo.class);
+        InvocationKey sha256 = new InvocationKey(method, new Object[] {newFoo("Smith")});
+        InvocationKey murmur3 = new InvocationKey(method, new Object[] {newFoo("Smith")}, KeyHasher.MURMUR3_128);
+        assertEquals("SHA-256", sha256.getHashAlgorithm());
+        assertEquals(64, sha256.getInvocationHash().length());
+        assertEquals("Murmur3-128", murmur3.getHashAlgorithm());
+        assertEquals(22, murmur3.getInvocationHash().length());
+        assertEquals(murmur3, new InvocationKey(method, new Object[] {newFoo("Smith")}, KeyHasher.MURMUR3_128));
+        assertNotEquals(sha256, murmur3);
+        // Keys serialized before the algorithm was recorded were all SHA-256
+        ObjectMapper mapper = new ObjectMapper();
+        String json = "{\"targetMethodName\":\"m\",\"targetClassName\":\"c\",\"invocationHash\":\"h\"}";
+        assertEquals("SHA-256", mapper.readValue(json, InvocationKey.class).getHashAlgorithm());
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Order {
+        private String customer;
+        private BigDecimal total;
+        private double discount;
+        private Map<String, Integer> quantities;
+        private Set<String> tags;
+    }
+
+    private static Order newOrder(boolean reversed) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        Set<String> tags = new LinkedHashSet<>();
+        List<String> items = Arrays.asList("apple", "pear", "fig", "kiwi");
+        if(reversed) {
+            Collections.reverse(items);
+        }
+        for(String item : items) {
+            quantities.put(item, item.length());
+            tags.add("tag-" + item);
+        }
+        return new Order("Bob", new BigDecimal(reversed? "12.50" : "12.5"), reversed? -0.0D : 0.0D, quantities, tags);
+    }
+
+    @Test
+    public void testCanonicalSerialization() throws Exception {
+        Method method = Bar.class.getMethod("doSomethingShadowed", Foo.class);
+        Order order = newOrder(false);
+        Order equivalent = newOrder(true);
+        // Plain serialization follows iteration order, so the two don't hash equally
+        assertNotEquals(new InvocationKey(method, new Object[] {order}), new InvocationKey(method, new Object[] {equivalent}));
+
+        KeyHasher hasher = KeyHasher.SHA_256.canonical();
+        InvocationKey key = new InvocationKey(method, new Object[] {order}, hasher);
+        assertEquals(key, new InvocationKey(method, new Object[] {equivalent}, hasher));
+        assertEquals("SHA-256/canonical", key.getHashAlgorithm());
+        assertSame(hasher, hasher.canonical());
+        String expected = "{\"customer\":\"Bob\",\"discount\":0.0," +
+                "\"quantities\":{\"apple\":5,\"fig\":3,\"kiwi\":4,\"pear\":4}," +
+                "\"tags\":[\"tag-apple\",\"tag-fig\",\"tag-kiwi\",\"tag-pear\"],\"total\":12.5}";
+        assertEquals(expected, hasher.getMapper().writeValueAsString(equivalent));
+        // Fixed across JVM runs, since nothing hashed depends on iteration or declaration order
+        assertEquals("fcc17ec78dbbe6fcf46ba3eb6610a9b54b317b2091ae9c38337a62ca41399320", key.getInvocationHash());
+
+        // Snapshots are hashed from JSON trees, whose fields are sorted too
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode first = mapper.createObjectNode().put("b", 2).put("a", 1);
+        ObjectNode second = mapper.createObjectNode().put("a", 1).put("b", 2);
+        assertEquals(new InvocationKey(method, new Object[] {first}, hasher), new InvocationKey(method, new Object[] {second}, hasher));
+    }
+
+    @Immutable
+    @Value
+    public static class Settings {
+        String region;
+        int retries;
+        List<String> features;
+    }
+
+    @Test
+    public void testKeyFragmentCache() throws Exception {
+        Method method = Bar.class.getMethod("doSomethingShadowed", Foo.class);
+        KeyFragmentCache cache = new KeyFragmentCache(16 * 1024);
+        String tenant = "tenant-42";
+        UUID request = UUID.randomUUID();
+        Settings settings = new Settings("eu-west-1", 3, Arrays.asList("shadowing", "replaying"));
+        for(KeyHasher hasher : new KeyHasher[] {KeyHasher.SHA_256, KeyHasher.MURMUR3_128.canonical()}) {
+            Object[] arguments = new Object[] {tenant, request, settings, newFoo("Smith"), null};
+            InvocationKey expected = new InvocationKey(method, arguments, hasher);
+            // Hashes the same the first time, when the cache is filled, and afterwards when it's used
+            assertEquals(expected, new InvocationKey(method, arguments, hasher, cache));
+            assertEquals(expected, new InvocationKey(method, arguments, hasher, cache));
+        }
+        // Only the immutable arguments are cached, once per mapper
+        long size = cache.size();
+        assertTrue(size > 0);
+        Settings equal = new Settings("eu-west-1", 3, Arrays.asList("shadowing", "replaying"));
+        new InvocationKey(method, new Object[] {new String(tenant.toCharArray()), request, equal}, KeyHasher.SHA_256, cache);
+        assertEquals(size, cache.size());
+        // and not those written as fast as they're looked up
+        KeyFragmentCache trivial = new KeyFragmentCache(16 * 1024);
+        Object[] scalars = new Object[] {42, 42L, true, 'c', 1.5D};
+        assertEquals(new InvocationKey(method, scalars), new InvocationKey(method, scalars, KeyHasher.SHA_256, trivial));
+        assertEquals(0L, trivial.size());
+
+        // The cache is emptied to stay under the cap
+        for(int i = 0; i < 1000; ++i) {
+            new InvocationKey(method, new Object[] {new Settings("region-" + i, i, Collections.emptyList())},
+                    KeyHasher.SHA_256, cache);
+            assertTrue(cache.size() <= 16 * 1024);
+        }
+        assertEquals(new InvocationKey(method, new Object[] {settings}),
+                new InvocationKey(method, new Object[] {settings}, KeyHasher.SHA_256, cache));
+    }
+}
@@ -0,0 +1,84 @@
+package io.shadowstack.invocations.destinations;
+
+import io.javalin.Javalin;
+import io.shadowstack.BaseTest;
+import io.shadowstack.incumbents.InvocationSink;
+import io.shadowstack.invocations.Invocation;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncRestInvocationDestinationTest extends BaseTest {
+    @Test
+    public void testSendsWithoutWaiting() throws Exception {
+        int port = this.findFreePort();
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger mostConcurrent = new AtomicInteger();
+        Queue<String> bodies = new ConcurrentLinkedQueue<>();
+        Javalin oracle = Javalin.create().start(port);
+        try {
+            // A slow stand-in for the oracle, keeping what it's sent to be checked here: a failed assertion in the
+            // handler would only make the call fail
+            oracle.post("/record/shadowing", ctx -> {
+                requests.incrementAndGet();
+                bodies.add(ctx.body());
+                mostConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                Thread.sleep(300L);
+                concurrent.decrementAndGet();
+                ctx.contentType("application/json").result("[]");
+            });
+            oracle.post("/record/replaying", ctx -> ctx.status(503));
+            AsyncInvocationDestination shadowing = AsyncRestInvocationDestination.shadowing("http://localhost:" + port);
+            assertEquals(Collections.emptyList(), shadowing.sendAsync(Collections.singletonList(invocation(0))).get());
+            assertEquals(1, bodies.size());
+            assertTrue(bodies.poll().contains("\"hash-0\""));
+
+            // Sixteen batches of a slow send each go out together
+            AtomicInteger sent = new AtomicInteger();
+            InvocationSink sink = new InvocationSink(new AsyncInvocationDestination() {
+                @Override
+                public CompletableFuture<List<Invocation>> sendAsync(List<Invocation> invocations) {
+                    return shadowing.sendAsync(invocations).thenApply(saved -> {
+                        sent.addAndGet(invocations.size());
+                        return saved;
+                    });
+                }
+            }).withBatchSize(2).sendingConcurrently(16);
+            long start = System.nanoTime();
+            Flux.range(0, 32).map(BaseTest::invocation).subscribe(sink);
+            for(int i = 0; i < 100 && sent.get() < 32; ++i) {
+                Thread.sleep(50L);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertEquals(32, sent.get());
+            assertEquals(17, requests.get());
+            assertEquals(16, bodies.size());
+            for(String body : bodies) {
+                assertTrue(body.contains("\"hash-"), body);
+            }
+            assertTrue(mostConcurrent.get() >= 8, "At most " + mostConcurrent.get() + " at once");
+            assertTrue(elapsedMillis < 16 * 300L / 4, "Took " + elapsedMillis + "ms");
+
+            // Failures complete the future exceptionally, and fail blocking sends
+            AsyncInvocationDestination replaying = AsyncRestInvocationDestination.replaying("http://localhost:" + port);
+            CompletionException e = assertThrows(CompletionException.class,
+                    () -> replaying.sendAsync(Collections.singletonList(invocation(1))).join());
+            assertTrue(e.getCause() instanceof IOException);
+            assertThrows(CompletionException.class, () -> replaying.send(Collections.singletonList(invocation(1))));
+        } finally {
+            oracle.stop();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.shadowstack.throttles;
+
+import io.shadowstack.BaseTest;
+import io.shadowstack.invocations.InvocationKey;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import static io.shadowstack.Fluently.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnyOfTest extends BaseTest {
+    @Test
+    public void testEachCallKeepsItsOwnDecision() throws Exception {
+        Method method = Object.class.getMethod("toString");
+        Throttle throttle = Throttle.anyOf(novel(1).per(1L, TimeUnit.HOURS), every(1L, TimeUnit.HOURS));
+        InvocationKey key = invocationKey(1);
+        // Only the first call is let through by the rate, and both are let through by novelty
+        Throttle.Decision first = throttle.decide(new Throttle.Call(method));
+        Throttle.Decision second = throttle.decide(new Throttle.Call(method));
+        assertNotNull(first);
+        assertNotNull(second);
+        // Judging them out of order doesn't mix them up: novelty keeps the second, and the rate the first.
+        assertFalse(second.reject(key), "A new key is kept");
+        assertFalse(first.reject(key), "A seen key is still kept by the rate that let its call through");
+        Throttle.Decision third = throttle.decide(new Throttle.Call(method));
+        assertTrue(third.reject(key), "but not once the rate has been spent");
+        assertFalse(third.reject(invocationKey(2)), "while another new key is still kept");
+    }
+
+    @Test
+    public void testRejectsWhenNoneLetTheCallThrough() throws Exception {
+        Method method = Object.class.getMethod("toString");
+        Throttle throttle = Throttle.anyOf(percent(0), every(1L, TimeUnit.HOURS));
+        assertNotNull(throttle.decide(new Throttle.Call(method)));
+        assertNull(throttle.decide(new Throttle.Call(method)));
+    }
+}
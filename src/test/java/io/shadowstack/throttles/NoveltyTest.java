@@ -0,0 +1,56 @@
+package io.shadowstack.throttles;
+
+import io.shadowstack.Bar;
+import io.shadowstack.BaseTest;
+import io.shadowstack.Foo;
+import io.shadowstack.invocations.InvocationKey;
+import io.shadowstack.invocations.KeyHasher;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import static io.shadowstack.Fluently.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NoveltyTest extends BaseTest {
+    @Test
+    public void testAtMostNPerKeyPerWindow() {
+        Novelty throttle = novel(2).per(1L, TimeUnit.HOURS);
+        assertFalse(throttle.reject());
+        for(int i = 0; i < 500; ++i) {
+            assertFalse(throttle.reject(invocationKey(i)), "A new key is accepted");
+            assertFalse(throttle.reject(invocationKey(i)), "and accepted again up to the limit");
+            assertTrue(throttle.reject(invocationKey(i)), "but not beyond it");
+        }
+    }
+
+    @Test
+    public void testHashedKeysAreTrackedByTheirOwnBits() throws NoSuchMethodException {
+        Method method = Bar.class.getMethod("doSomethingShadowed", Foo.class);
+        for(KeyHasher hasher : new KeyHasher[] {KeyHasher.SHA_256, KeyHasher.MURMUR3_128}) {
+            Novelty throttle = novel(1).tracking(10000).per(1L, TimeUnit.HOURS);
+            for(int i = 0; i < 1000; ++i) {
+                InvocationKey key = new InvocationKey(method, new Object[] {i}, hasher);
+                assertFalse(throttle.reject(key), "A new key is accepted");
+                assertTrue(throttle.reject(key), "but not again");
+            }
+        }
+    }
+
+    @Test
+    public void testKeysAreAcceptedAgainInLaterWindows() throws InterruptedException {
+        Novelty throttle = novel(1).per(100L, TimeUnit.MILLISECONDS);
+        assertFalse(throttle.reject(invocationKey(1)));
+        assertTrue(throttle.reject(invocationKey(1)));
+        // Two whole windows later nothing about the key is remembered.
+        Thread.sleep(250L);
+        assertFalse(throttle.reject(invocationKey(1)));
+        assertTrue(throttle.reject(invocationKey(1)));
+    }
+
+    @Test
+    public void testWithoutWindowNeverAccepts() {
+        assertTrue(novel(1).tracking(100).reject(invocationKey(1)));
+    }
+}
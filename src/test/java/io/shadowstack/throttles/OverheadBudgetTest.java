@@ -0,0 +1,75 @@
+package io.shadowstack.throttles;
+
+import io.shadowstack.Bar;
+import io.shadowstack.BaseTest;
+import io.shadowstack.Foo;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+
+import static io.shadowstack.Fluently.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OverheadBudgetTest extends BaseTest {
+    private static int accepted(Throttle throttle, Method method, int calls) {
+        int accepted = 0;
+        for(int i = 0; i < calls; ++i) {
+            if(throttle.decide(new Throttle.Call(method)) != null) {
+                ++accepted;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Report what a call to the given method cost, as the recorder does for the calls the throttle lets through.
+     */
+    private static void recorded(Throttle throttle, Method method, Duration call, Duration capture, double backlog) {
+        Throttle.Decision decision = null;
+        while(decision == null) {
+            decision = throttle.decide(new Throttle.Call(method));
+        }
+        decision.recorded(call, capture, backlog);
+    }
+
+    @Test
+    public void testSampleRateFollowsMeasuredCost() throws Exception {
+        Method slow = Bar.class.getMethod("doSomethingShadowed", Foo.class);
+        Method cheap = Object.class.getMethod("hashCode");
+        OverheadBudget throttle = overhead(2.0D);
+        assertEquals(1.0D, throttle.probability(slow), "Everything is recorded until something is measured");
+        assertEquals(100_000, accepted(throttle, slow, 100_000));
+
+        for(int i = 0; i < 100; ++i) {
+            recorded(throttle, slow, Duration.ofMillis(1L), Duration.ofNanos(100_000L), 0.0D);
+            recorded(throttle, cheap, Duration.ofNanos(20L), Duration.ofNanos(50_000L), 0.0D);
+        }
+        // 2% of 1ms buys a 100us capture every fifth call
+        assertEquals(0.2D, throttle.probability(slow), 1e-9);
+        int accepted = accepted(throttle, slow, 100_000);
+        assertTrue(accepted > 19_000 && accepted < 21_000, String.valueOf(accepted));
+        assertEquals(0.001D, throttle.probability(cheap), 1e-9, "Cheap calls are hardly ever recorded");
+
+        // Costs are tracked per method, and drift towards new measurements
+        for(int i = 0; i < 200; ++i) {
+            recorded(throttle, slow, Duration.ofMillis(1L), Duration.ofNanos(10_000L), 0.0D);
+        }
+        assertEquals(1.0D, throttle.probability(slow), 1e-9);
+        assertEquals(0.001D, throttle.probability(cheap), 1e-9);
+    }
+
+    @Test
+    public void testBacksOffAsTheSinkFallsBehind() throws Exception {
+        Method slow = Bar.class.getMethod("doSomethingShadowed", Foo.class);
+        OverheadBudget throttle = overhead(2.0D);
+        recorded(throttle, slow, Duration.ofMillis(1L), Duration.ofNanos(10_000L), 0.5D);
+        assertEquals(1.0D, throttle.probability(slow), 1e-9, "A half-full queue is tolerated");
+        recorded(throttle, slow, Duration.ofMillis(1L), Duration.ofNanos(10_000L), 0.9D);
+        assertEquals(0.2D, throttle.probability(slow), 1e-9);
+        recorded(throttle, slow, Duration.ofMillis(1L), Duration.ofNanos(10_000L), 1.0D);
+        assertEquals(0.001D, throttle.probability(slow), 1e-9, "but a full one is nearly shut off");
+        recorded(throttle, slow, Duration.ofMillis(1L), Duration.ofNanos(10_000L), 0.0D);
+        assertEquals(1.0D, throttle.probability(slow), 1e-9);
+    }
+}
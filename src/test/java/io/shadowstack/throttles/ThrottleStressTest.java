@@ -0,0 +1,94 @@
+package io.shadowstack.throttles;
+
+import io.shadowstack.BaseTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.shadowstack.Fluently.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ThrottleStressTest extends BaseTest {
+    private static final int THREADS = 8;
+    private static final int CALLS_PER_THREAD = 100000;
+
+    /**
+     * @return How many of the calls made to the given throttle from many threads at once it accepted.
+     */
+    private static int hammer(Throttle throttle) throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        AtomicInteger accepted = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for(int t = 0; t < THREADS; ++t) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                int acceptedHere = 0;
+                for(int i = 0; i < CALLS_PER_THREAD; ++i) {
+                    if(!throttle.reject()) {
+                        ++acceptedHere;
+                    }
+                }
+                accepted.addAndGet(acceptedHere);
+                return null;
+            }));
+        }
+        for(Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        return accepted.get();
+    }
+
+    @Test
+    public void testRateNeverOverAccepts() throws Exception {
+        assertEquals(1000, hammer(rate(1000).per(1L, TimeUnit.HOURS)));
+        assertEquals(1, hammer(every(1L, TimeUnit.HOURS)));
+    }
+
+    @Test
+    public void testSlidingWindowNeverOverAccepts() throws Exception {
+        assertEquals(1000, hammer(window(1000).per(1L, TimeUnit.HOURS)));
+    }
+
+    @Test
+    public void testRateRefills() throws InterruptedException {
+        Throttle throttle = rate(2).per(100L, TimeUnit.MILLISECONDS);
+        assertFalse(throttle.reject());
+        assertFalse(throttle.reject());
+        assertTrue(throttle.reject());
+        // Idle time fills the bucket back up, but no further than it holds.
+        Thread.sleep(300L);
+        assertFalse(throttle.reject());
+        assertFalse(throttle.reject());
+        assertTrue(throttle.reject());
+    }
+
+    @Test
+    public void testPerMakesAThrottleOfItsOwn() {
+        // Throttles are shared between recording threads, so setting the duration doesn't change one in place
+        Rate unset = rate(1);
+        Rate hourly = unset.per(1L, TimeUnit.HOURS);
+        assertNotSame(unset, hourly);
+        assertTrue(unset.reject(), "Still has no duration");
+        assertFalse(hourly.reject());
+        assertTrue(hourly.reject());
+        SlidingWindow unsetWindow = window(1);
+        SlidingWindow hourlyWindow = unsetWindow.per(1L, TimeUnit.HOURS);
+        assertNotSame(unsetWindow, hourlyWindow);
+        assertTrue(unsetWindow.reject(), "Still has no duration");
+        assertFalse(hourlyWindow.reject());
+        assertTrue(hourlyWindow.reject());
+    }
+
+    @Test
+    public void testPercentageUnderContention() throws Exception {
+        double sampled = (double) hammer(percent(30)) / (THREADS * CALLS_PER_THREAD);
+        assertEquals(0.3D, sampled, 0.01D);
+        assertEquals(0, hammer(percent(0)));
+        assertEquals(THREADS * CALLS_PER_THREAD, hammer(percent(100)));
+    }
+}